@@ -0,0 +1,161 @@
+package org.uniflow.core;
+
+import com.google.common.base.Stopwatch;
+import com.sun.tools.javac.util.Context;
+import org.uniflow.core.flow.SolveConstraints;
+import org.uniflow.core.model.constraint.ConstraintManager;
+import org.uniflow.core.model.qualifier.Qualifier;
+import org.uniflow.core.model.reporting.PluginError;
+import org.uniflow.core.model.slot.SlotManager;
+import org.uniflow.core.model.util.serialization.BinaryDeserializer;
+import org.uniflow.core.solver.InferenceResult;
+import org.uniflow.core.solver.InferenceSolver;
+import org.uniflow.core.solver.SolutionCache;
+import org.uniflow.core.typesystem.QualifierHierarchy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solves a constraint file written with {@code --constraints-output}, without running javac. This makes it
+ * cheap to compare solvers or solver options on the constraints of a big project.
+ * <p>
+ * The {@link PluginOptions} are accepted as well, so the solver options of the plugin, e.g.
+ * {@code --solver-portfolio}, apply to the offline solve. Each hierarchy is solved by the solver the plugin
+ * would choose for it, unless {@code --solver} is given.
+ */
+@SuppressWarnings("initialization")
+@Command(name = "OfflineSolver",
+        sortOptions = false)
+public final class OfflineSolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(OfflineSolver.class);
+
+    @Parameters(index = "0", description = "Constraint file written with --constraints-output.")
+    private String constraintsFile;
+
+    @Option(names = {"--solver"},
+            description = "Class name of the InferenceSolver to run for every hierarchy, instead of the solver the " +
+                    "plugin chooses for each hierarchy.")
+    private String solverClass;
+
+    @Option(names = {"--solutions-output"},
+            description = "File to write the solutions to, as one \"<slot id> <qualifier>\" line per slot.")
+    private String solutionsOutputFile;
+
+    private final Context context;
+
+    private final PluginOptions options;
+
+    private OfflineSolver() {
+        this.context = new Context();
+        this.options = PluginOptions.instance(context);
+    }
+
+    public static void main(String[] args) {
+        OfflineSolver offlineSolver = new OfflineSolver();
+        CommandLine cmd = new CommandLine(offlineSolver);
+        cmd.addMixin("pluginOptions", offlineSolver.options);
+        cmd.setCaseInsensitiveEnumValuesAllowed(true);
+        cmd.setUsageHelpAutoWidth(true);
+        cmd.setPosixClusteredShortOptionsAllowed(false);
+
+        try {
+            cmd.parseArgs(args);
+        } catch (Exception e) {
+            throw new IllegalArgumentException(
+                    "Failed to parse options. Use option -h or --help for help/usage details.", e);
+        }
+
+        if (offlineSolver.options.isHelp()) {
+            cmd.usage(System.out);
+            return;
+        }
+        UniFlowPlugin.validateOptions(offlineSolver.options);
+        UniFlowPlugin.setLogLevel(offlineSolver.options.getLogLevel());
+        System.exit(offlineSolver.run() ? 0 : 1);
+    }
+
+    /**
+     * @return true if the constraints of all hierarchies are satisfiable
+     */
+    private boolean run() {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<QualifierHierarchy> hierarchies = BinaryDeserializer.read(context, Paths.get(constraintsFile));
+        SlotManager slotManager = SlotManager.instance(context);
+        ConstraintManager constraintManager = ConstraintManager.instance(context);
+        SolutionCache solutionCache = SolutionCache.instance(context);
+        logger.info("Read {} slots and {} constraints in {} ms",
+                slotManager.getSlots().size(),
+                constraintManager.getEffectiveConstraintCount(),
+                stopwatch.elapsed(TimeUnit.MILLISECONDS));
+
+        boolean satisfiable = true;
+        List<InferenceResult> results = new ArrayList<>();
+        for (QualifierHierarchy hierarchy : hierarchies) {
+            stopwatch.reset().start();
+            InferenceSolver solver = solverClass != null
+                    ? createSolver()
+                    : SolveConstraints.createSolver(hierarchy, options);
+            InferenceResult result = solver.solve(context,
+                    options.getSolverConfiguration(),
+                    slotManager.getSlots().stream().filter(s -> s.getOwner() == hierarchy).toList(),
+                    constraintManager.getEffectiveConstraints(hierarchy),
+                    hierarchy);
+            results.add(result);
+            satisfiable &= result.hasSolution();
+
+            logger.info("{}: {} with {} solutions in {} ms",
+                    hierarchy.getClass().getSimpleName(),
+                    result.hasSolution() ? "sat" : "unsat",
+                    result.hasSolution() ? result.getSolutions().size() : 0,
+                    stopwatch.elapsed(TimeUnit.MILLISECONDS));
+        }
+        solutionCache.save();
+
+        if (solutionsOutputFile != null) {
+            writeSolutions(results);
+        }
+        return satisfiable;
+    }
+
+    private InferenceSolver createSolver() {
+        try {
+            return Class.forName(solverClass).asSubclass(InferenceSolver.class).getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException | ClassCastException | NoSuchMethodException | InstantiationException
+                 | IllegalAccessException | InvocationTargetException e) {
+            throw new PluginError("Cannot instantiate solver " + solverClass, e);
+        }
+    }
+
+    private void writeSolutions(List<InferenceResult> results) {
+        Path file = Paths.get(solutionsOutputFile);
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            for (InferenceResult result : results) {
+                if (!result.hasSolution()) {
+                    continue;
+                }
+                for (Map.Entry<Integer, Qualifier> solution : result.getSolutions().entrySet()) {
+                    out.println(solution.getKey() + " " + solution.getValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new PluginError(e);
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package org.uniflow.core;
 
 import ch.qos.logback.classic.Level;
+import com.google.common.collect.ImmutableMap;
 import com.sun.tools.javac.util.Context;
+import org.uniflow.core.solver.ExternalMaxSatSolver;
+import org.uniflow.core.solver.MaxSat2TypeSolver;
+import org.uniflow.core.solver.SolverPortfolio;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 
 import java.util.EnumSet;
+import java.util.Map;
 import java.util.Set;
 
 @SuppressWarnings("initialization")
@@ -13,7 +18,11 @@ import java.util.Set;
         sortOptions = false)
 public final class PluginOptions {
 
-    public static final int CACHE_SIZE_MIN = 300;
+    public static final int CACHE_MEMORY_MIN = 1;
+
+    public static final int SOLVER_THREADS_MIN = 1;
+
+    public static final int SOLVER_TIMEOUT_MIN = 1;
 
     public enum Mode {
         TYPE_CHECK, INFERENCE;
@@ -77,6 +86,18 @@ public final class PluginOptions {
             description = "Should make array component types invariant (default: ${DEFAULT-VALUE}).")
     private boolean invariantArrays = false;
 
+    @Option(names = {"--fused-transfer"},
+            description = "Whether to run the transfer functions of all type systems on the same stores, each " +
+                    "changing only the slots of its own qualifier hierarchies, instead of on copies of the stores " +
+                    "(default: ${DEFAULT-VALUE}).")
+    private boolean fusedTransfer = false;
+
+    @Option(names = {"--sparse-transfer"},
+            description = "Whether to reuse the result values of the nodes whose transfer doesn't depend on " +
+                    "their input, such as literals and arithmetic, when they are analyzed again " +
+                    "(default: ${DEFAULT-VALUE}).")
+    private boolean sparseTransfer = false;
+
     // CFG visualization options
     @Option(names = {"--flowoutdir"},
             description = "Directory to place CFG and type resolution visualization.")
@@ -95,14 +116,65 @@ public final class PluginOptions {
             description = "Annotation file utilities output directory.  WARNING: This directory must be empty.")
     private String afuOutputDir;
 
+    // Solver options
+    @Option(names = {"--solver-threads"},
+            description = "Number of qualifier hierarchies to solve concurrently (default: ${DEFAULT-VALUE}).")
+    private int solverThreads = SOLVER_THREADS_MIN;
+
+    @Option(names = {"--solver-component-threads"},
+            description = "Number of independent constraint components to solve concurrently " +
+                    "within a qualifier hierarchy (default: ${DEFAULT-VALUE}).")
+    private int solverComponentThreads = SOLVER_THREADS_MIN;
+
+    @Option(names = {"--simplify-constraints"},
+            negatable = true,
+            description = "Whether to simplify constraints before solving them (default: ${DEFAULT-VALUE}).")
+    private boolean simplifyConstraints = true;
+
+    @Option(names = {"--solver-portfolio"},
+            description = "Set SAT4J solvers to run on each constraint component (default: ${DEFAULT-VALUE}). " +
+                    "SINGLE uses 1 thread, BOTH 2 and WIDE 4. Candidates: ${COMPLETION-CANDIDATES}")
+    private SolverPortfolio solverPortfolio = SolverPortfolio.AUTO;
+
+    @Option(names = {"--solver-timeout"},
+            description = "Timeout in seconds for solving the constraints of a qualifier hierarchy " +
+                    "(default: ${DEFAULT-VALUE}).")
+    private int solverTimeout = 1000;
+
+    @Option(names = {"--solver-best-model-on-timeout"},
+            description = "Whether to use the best solution found so far when the solver times out, " +
+                    "instead of failing (default: ${DEFAULT-VALUE}).")
+    private boolean solverBestModelOnTimeout = false;
+
+    @Option(names = {"--solver-cache"},
+            description = "File to cache solutions of constraint components in, so later compilations can reuse them.")
+    private String solverCacheFile;
+
+    @Option(names = {"--external-solver"},
+            description = "Command to run an external MaxSAT solver on a WCNF file, instead of SAT4J. The path " +
+                    "of the file is appended to the command.")
+    private String externalSolverCommand;
+
+    @Option(names = {"--constraints-output"},
+            description = "File to write the slots and constraints to before solving, so they can be solved " +
+                    "offline by OfflineSolver.")
+    private String constraintsOutputFile;
+
+    @Option(names = {"--spill-dir"},
+            description = "Directory to spill the constraints of each analyzed class to, so they don't stay in " +
+                    "memory until the end of the compilation. They are read back and solved one hierarchy at a " +
+                    "time, so --solver-threads doesn't apply.")
+    private String spillDir;
+
     // Misc options
     @Option(names = {"--log-level"},
             description = "Set log level (default: ${DEFAULT-VALUE}). Candidates: ${COMPLETION-CANDIDATES}")
     private LogLevel logLevel = LogLevel.INFO;
 
-    @Option(names = {"--cache-size"},
-            description = "Set internal cache size (default: ${DEFAULT-VALUE}).")
-    private int cacheSize = CACHE_SIZE_MIN;
+    @Option(names = {"--cache-memory"},
+            description = "Set the memory budget in megabytes of each internal cache, as estimated from the " +
+                    "size of its entries (default: ${DEFAULT-VALUE}).")
+    private int cacheMemory = 64;
 
     private PluginOptions(Context context) {
         context.put(PluginOptions.class, this);
@@ -140,8 +212,69 @@ public final class PluginOptions {
         return typeSystems;
     }
 
-    public int getCacheSize() {
-        return cacheSize;
+    public int getCacheMemory() {
+        return cacheMemory;
+    }
+
+    public long getCacheMemoryBytes() {
+        return cacheMemory * 1024L * 1024L;
+    }
+
+    public int getSolverThreads() {
+        return solverThreads;
+    }
+
+    public int getSolverComponentThreads() {
+        return solverComponentThreads;
+    }
+
+    public boolean isSimplifyConstraints() {
+        return simplifyConstraints;
+    }
+
+    public SolverPortfolio getSolverPortfolio() {
+        return solverPortfolio;
+    }
+
+    public int getSolverTimeout() {
+        return solverTimeout;
+    }
+
+    public boolean isSolverBestModelOnTimeout() {
+        return solverBestModelOnTimeout;
+    }
+
+    public String getSolverCacheFile() {
+        return solverCacheFile;
+    }
+
+    public String getExternalSolverCommand() {
+        return externalSolverCommand;
+    }
+
+    public String getConstraintsOutputFile() {
+        return constraintsOutputFile;
+    }
+
+    public String getSpillDir() {
+        return spillDir;
+    }
+
+    /**
+     * @return the configuration of {@link MaxSat2TypeSolver} and {@link ExternalMaxSatSolver} given by the
+     * solver options
+     */
+    public Map<String, String> getSolverConfiguration() {
+        ImmutableMap.Builder<String, String> configuration = ImmutableMap.<String, String>builder()
+                .put(MaxSat2TypeSolver.COMPONENT_THREADS, String.valueOf(solverComponentThreads))
+                .put(MaxSat2TypeSolver.SIMPLIFY, String.valueOf(simplifyConstraints))
+                .put(MaxSat2TypeSolver.PORTFOLIO, solverPortfolio.name())
+                .put(MaxSat2TypeSolver.TIMEOUT, String.valueOf(solverTimeout))
+                .put(MaxSat2TypeSolver.BEST_MODEL_ON_TIMEOUT, String.valueOf(solverBestModelOnTimeout));
+        if (externalSolverCommand != null) {
+            configuration.put(ExternalMaxSatSolver.COMMAND, externalSolverCommand);
+        }
+        return configuration.build();
     }
 
     public String getFlowOutDir() {
@@ -156,6 +289,14 @@ public final class PluginOptions {
         return invariantArrays;
     }
 
+    public boolean isFusedTransfer() {
+        return fusedTransfer;
+    }
+
+    public boolean isSparseTransfer() {
+        return sparseTransfer;
+    }
+
     public String getPathToAfuScripts() {
         return pathToAfuScripts;
     }
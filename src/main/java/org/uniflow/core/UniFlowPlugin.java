@@ -114,10 +114,37 @@ public final class UniFlowPlugin implements Plugin, TaskListener {
         entryPoint.enter(path);
     }
 
-    private static void validateOptions(PluginOptions options) {
-        Verify.verify(options.getCacheSize() >= PluginOptions.CACHE_SIZE_MIN,
-                "Minimum cache size is %s",
-                PluginOptions.CACHE_SIZE_MIN);
+    static void validateOptions(PluginOptions options) {
+        Verify.verify(options.getCacheMemory() >= PluginOptions.CACHE_MEMORY_MIN,
+                "Minimum cache memory is %s MB",
+                PluginOptions.CACHE_MEMORY_MIN);
+
+        Verify.verify(options.getSolverThreads() >= PluginOptions.SOLVER_THREADS_MIN,
+                "Minimum number of solver threads is %s",
+                PluginOptions.SOLVER_THREADS_MIN);
+
+        Verify.verify(options.getSolverComponentThreads() >= PluginOptions.SOLVER_THREADS_MIN,
+                "Minimum number of solver component threads is %s",
+                PluginOptions.SOLVER_THREADS_MIN);
+
+        Verify.verify(options.getSolverTimeout() >= PluginOptions.SOLVER_TIMEOUT_MIN,
+                "Minimum solver timeout is %s seconds",
+                PluginOptions.SOLVER_TIMEOUT_MIN);
+
+        Verify.verify(options.getSolverCacheFile() == null || !options.getSolverCacheFile().isEmpty(),
+                "Solver cache file should never be empty");
+
+        Verify.verify(options.getExternalSolverCommand() == null || !options.getExternalSolverCommand().isBlank(),
+                "External solver command should never be empty");
+
+        Verify.verify(options.getConstraintsOutputFile() == null || !options.getConstraintsOutputFile().isEmpty(),
+                "Constraints output file should never be empty");
+
+        Verify.verify(options.getSpillDir() == null || !options.getSpillDir().isEmpty(),
+                "Spill directory should never be empty");
+
+        Verify.verify(options.getSpillDir() == null || options.getMode().isInference(),
+                "Spilling constraints requires inference mode");
 
         Verify.verify(options.getFlowOutDir() == null || !options.getFlowOutDir().isEmpty(),
                 "Flowdotdir should never be empty");
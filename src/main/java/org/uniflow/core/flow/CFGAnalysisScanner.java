@@ -18,6 +18,7 @@ import org.uniflow.core.TypeSystems;
 import org.uniflow.core.event.Event;
 import org.uniflow.core.event.EventListener;
 import org.uniflow.core.event.EventManager;
+import org.uniflow.core.model.slot.SlotManager;
 import org.uniflow.core.typesystem.TypeSystem;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.dataflow.analysis.TransferInput;
@@ -122,6 +123,8 @@ public final class CFGAnalysisScanner extends TreePathScanner<Void, Void> implem
             Verify.verify(initializationStaticStores.isEmpty());
         }
         if (e == Event.SimpleEvent.FULL_ANALYSIS) {
+            logger.debug("Analysis cache: {}", flowContext.getAnalysisCacheStats());
+            logger.debug("Product slot cache: {}", SlotManager.instance(context).getProductSlotCacheStats());
             if (cfgVisualizer != null) {
                 cfgVisualizer.shutdown();
             }
@@ -259,6 +262,9 @@ public final class CFGAnalysisScanner extends TreePathScanner<Void, Void> implem
         return null;
     }
 
+    // The CFGs aren't cached. javac reports each top-level class once per compilation, so each body is only
+    // built once, and a CFG can't be reused by a later compilation because it refers to the trees and symbols
+    // of this one. Nodes also refer to the artificial trees created while building the CFG.
     private ControlFlowGraph buildCFG(TreePath path, UnderlyingAST ast) {
         IdentityHashMap<Tree, TreePath> artificialTrees = new IdentityHashMap<>();
         ArtificialTreeHandler artificialTreeHandler = (artificialTree, currentPath) ->
@@ -272,6 +278,10 @@ public final class CFGAnalysisScanner extends TreePathScanner<Void, Void> implem
         return cfg;
     }
 
+    // The CFGs are analyzed one at a time, even if they don't depend on each other's stores. The analysis
+    // runs on javac's Types and symbols, which aren't thread-safe. It also keeps its current node and CFG in
+    // the FlowContext shared by LocationManager and the type systems, and creates slots whose ids must not
+    // depend on the schedule. Only constraint solving is concurrent, see SolveConstraints.
     private void process(Tree tree, ControlFlowGraph cfg) {
         flowContext.setCurrentCFG(cfg);
         flowContext.setFlowAnalysis(flowAnalysis);
@@ -0,0 +1,198 @@
+package org.uniflow.core.flow;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * An insertion-ordered map whose copies share their entries until one of them is modified, so copying a
+ * {@link FlowStore} doesn't copy its maps.
+ * <p>
+ * A copy and its original share the same {@link LinkedHashMap}, and both are marked as shared. The first
+ * modification of either copies the entries, and only if the modification changes something: putting a
+ * value that is already in the map or updating no entry keeps the sharing. This is not thread-safe, which
+ * is fine as a store is only used by the analysis of one method.
+ */
+final class CopyOnWriteMap<K, V> {
+
+    private LinkedHashMap<K, V> entries;
+
+    /**
+     * Whether {@link #entries} may be shared with another map, so it must be copied before modifying it.
+     */
+    private boolean shared;
+
+    CopyOnWriteMap() {
+        this.entries = new LinkedHashMap<>();
+        this.shared = false;
+    }
+
+    /**
+     * @return a copy of this map, which shares the entries with this map
+     */
+    CopyOnWriteMap<K, V> copy() {
+        CopyOnWriteMap<K, V> copy = new CopyOnWriteMap<>();
+        copy.assign(this);
+        return copy;
+    }
+
+    /**
+     * Replaces the entries of this map with the entries of {@code other}, sharing them with {@code other}.
+     */
+    void assign(CopyOnWriteMap<K, V> other) {
+        if (entries == other.entries) {
+            return;
+        }
+        entries = other.entries;
+        shared = true;
+        other.shared = true;
+    }
+
+    /**
+     * @return whether this map and {@code other} share their entries, so they are equal without comparing
+     * the entries
+     */
+    boolean sharesEntriesWith(CopyOnWriteMap<K, V> other) {
+        return entries == other.entries;
+    }
+
+    @Nullable V get(Object key) {
+        return entries.get(key);
+    }
+
+    boolean containsKey(Object key) {
+        return entries.containsKey(key);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @return an unmodifiable view of the keys
+     */
+    Set<K> keySet() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * @return an unmodifiable view of the entries
+     */
+    Set<Map.Entry<K, V>> entrySet() {
+        return Collections.unmodifiableMap(entries).entrySet();
+    }
+
+    void put(K key, V value) {
+        if (entries.get(key) == value && value != null) {
+            return;
+        }
+        mutableEntries().put(key, value);
+    }
+
+    void remove(Object key) {
+        if (entries.containsKey(key)) {
+            mutableEntries().remove(key);
+        }
+    }
+
+    /**
+     * Updates the entry of {@code key}, if any, with the result of {@code updater}, which returns the new
+     * value, the old value to keep the entry, or null to remove the entry.
+     */
+    @SuppressWarnings("unchecked")
+    void update(Object key, Function<V, @Nullable V> updater) {
+        V oldValue = entries.get(key);
+        if (oldValue == null) {
+            return;
+        }
+        V newValue = updater.apply(oldValue);
+        if (newValue == null) {
+            mutableEntries().remove(key);
+        } else if (newValue != oldValue) {
+            // key is in the map, so it is a K
+            mutableEntries().put((K) key, newValue);
+        }
+    }
+
+    void clear() {
+        if (entries.isEmpty()) {
+            return;
+        }
+        if (shared) {
+            entries = new LinkedHashMap<>();
+            shared = false;
+        } else {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Updates each entry with the result of {@code updater}, which returns the new value, the old value to
+     * keep the entry, or null to remove the entry. The entries are copied only when the first entry changes.
+     */
+    void updateAll(BiFunction<K, V, @Nullable V> updater) {
+        Iterator<Map.Entry<K, V>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<K, V> entry = iterator.next();
+            V oldValue = entry.getValue();
+            V newValue = updater.apply(entry.getKey(), oldValue);
+            if (newValue == oldValue) {
+                continue;
+            }
+            if (shared) {
+                // copy the entries and continue from the same entry of the copy, the previous ones are unchanged
+                K key = entry.getKey();
+                entries = new LinkedHashMap<>(entries);
+                shared = false;
+                iterator = entries.entrySet().iterator();
+                do {
+                    entry = iterator.next();
+                } while (!entry.getKey().equals(key));
+            }
+            if (newValue == null) {
+                iterator.remove();
+            } else {
+                entry.setValue(newValue);
+            }
+        }
+    }
+
+    private LinkedHashMap<K, V> mutableEntries() {
+        if (shared) {
+            entries = new LinkedHashMap<>(entries);
+            shared = false;
+        }
+        return entries;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CopyOnWriteMap<?, ?> other)) {
+            return false;
+        }
+        return entries == other.entries || entries.equals(other.entries);
+    }
+
+    @Override
+    public int hashCode() {
+        return entries.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return entries.toString();
+    }
+}
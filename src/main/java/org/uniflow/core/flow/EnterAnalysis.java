@@ -25,6 +25,8 @@ public final class EnterAnalysis implements EventListener {
         this.astAnalysisScanner = ASTAnalysisScanner.instance(context);
         this.cfgAnalysisScanner = CFGAnalysisScanner.instance(context);
         this.eventManager = EventManager.instance(context);
+        // created before any broadcast, as a listener can't be registered while an event is broadcast
+        FlowValueInterner.instance(context);
 
         eventManager.register(this);
     }
@@ -3,32 +3,47 @@ package org.uniflow.core.flow;
 import com.sun.source.tree.Tree;
 import com.sun.tools.javac.util.Context;
 import org.uniflow.core.TypeSystems;
+import org.uniflow.core.model.reporting.PluginError;
 import org.checkerframework.checker.nullness.qual.Nullable;
-import org.checkerframework.dataflow.analysis.AnalysisResult;
 import org.checkerframework.dataflow.analysis.ForwardAnalysisImpl;
+import org.checkerframework.dataflow.analysis.Store;
 import org.checkerframework.dataflow.analysis.TransferInput;
 import org.checkerframework.dataflow.analysis.TransferResult;
+import org.checkerframework.dataflow.cfg.ControlFlowGraph;
 import org.checkerframework.dataflow.cfg.block.Block;
 import org.checkerframework.dataflow.cfg.node.Node;
 
 import javax.lang.model.type.TypeMirror;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 public final class FlowAnalysis extends ForwardAnalysisImpl<FlowValue, FlowStore, FlowTransfer> {
 
     private final FlowContext flowContext;
 
+    /**
+     * replaces the worklist of the super class, see {@link #performAnalysis(ControlFlowGraph)}
+     */
+    private final ReversePostOrderWorklist blockWorklist;
+
     /**
      * last node analyzed in the current block analysis
      */
     private @Nullable Node approxCurrentNode;
 
+    /**
+     * stores before the nodes of the analyzed CFG, computed by {@link #getStoresBefore()} on the first query
+     */
+    private @Nullable IdentityHashMap<Node, FlowStore> storesBefore;
+
     private FlowAnalysis(Context context) {
         super(getMaxCountBeforeWidening(context));
         this.transferFunction = FlowTransfer.instance(context);
         this.flowContext = FlowContext.instance(context);
+        this.blockWorklist = new ReversePostOrderWorklist();
         this.approxCurrentNode = null;
 
         context.put(FlowAnalysis.class, this);
@@ -43,6 +58,127 @@ public final class FlowAnalysis extends ForwardAnalysisImpl<FlowValue, FlowStore
         return instance;
     }
 
+    // Same as super.performAnalysis(), but takes the blocks from blockWorklist. The worklist of the super class
+    // can't be replaced, so addToWorklist() and initInitialInputs() redirect the blocks added to it.
+    @Override
+    public void performAnalysis(ControlFlowGraph cfg) {
+        if (isRunning) {
+            throw new PluginError("performAnalysis() shouldn't be called when the analysis is running");
+        }
+        isRunning = true;
+        storesBefore = null;
+
+        try {
+            init(cfg);
+            while (!blockWorklist.isEmpty()) {
+                performAnalysisBlock(blockWorklist.poll());
+            }
+        } finally {
+            isRunning = false;
+        }
+    }
+
+    @Override
+    protected void initInitialInputs() {
+        super.initInitialInputs();
+        blockWorklist.process(cfg);
+        while (!worklist.isEmpty()) {
+            blockWorklist.add(worklist.poll());
+        }
+    }
+
+    @Override
+    protected void addToWorklist(Block b) {
+        blockWorklist.add(b);
+    }
+
+    // Copy of super.addStoreBefore(), but only widens at loop headers. The super class widens the stores
+    // flowing into any block that received maxCountBeforeWidening stores, which includes joins of long branch
+    // chains and exit blocks, while only the stores of loop headers can keep changing.
+    @Override
+    protected void addStoreBefore(Block b,
+                                  @Nullable Node node,
+                                  FlowStore s,
+                                  Store.Kind kind,
+                                  boolean addBlockToWorklist) {
+        FlowStore thenStore = getStoreBefore(b, Store.Kind.THEN);
+        FlowStore elseStore = getStoreBefore(b, Store.Kind.ELSE);
+        boolean shouldWiden = false;
+        if (blockCount != null && blockWorklist.isLoopHeader(b)) {
+            int count = blockCount.getOrDefault(b, 0);
+            shouldWiden = count >= maxCountBeforeWidening;
+            blockCount.put(b, shouldWiden ? 0 : count + 1);
+        }
+
+        switch (kind) {
+            case THEN -> {
+                // update the then store
+                FlowStore newThenStore = mergeStores(s, thenStore, shouldWiden);
+                if (!newThenStore.equals(thenStore)) {
+                    thenStores.put(b, newThenStore);
+                    if (elseStore != null) {
+                        inputs.put(b, new TransferInput<>(node, this, newThenStore, elseStore));
+                        addBlockToWorklist = true;
+                    }
+                }
+            }
+            case ELSE -> {
+                // update the else store
+                FlowStore newElseStore = mergeStores(s, elseStore, shouldWiden);
+                if (!newElseStore.equals(elseStore)) {
+                    elseStores.put(b, newElseStore);
+                    if (thenStore != null) {
+                        inputs.put(b, new TransferInput<>(node, this, thenStore, newElseStore));
+                        addBlockToWorklist = true;
+                    }
+                }
+            }
+            case BOTH -> {
+                if (thenStore == elseStore) {
+                    // currently there is only one regular store
+                    FlowStore newStore = mergeStores(s, thenStore, shouldWiden);
+                    if (!newStore.equals(thenStore)) {
+                        thenStores.put(b, newStore);
+                        elseStores.put(b, newStore);
+                        inputs.put(b, new TransferInput<>(node, this, newStore));
+                        addBlockToWorklist = true;
+                    }
+                } else {
+                    boolean storeChanged = false;
+                    FlowStore newThenStore = mergeStores(s, thenStore, shouldWiden);
+                    if (!newThenStore.equals(thenStore)) {
+                        thenStores.put(b, newThenStore);
+                        storeChanged = true;
+                    }
+                    FlowStore newElseStore = mergeStores(s, elseStore, shouldWiden);
+                    if (!newElseStore.equals(elseStore)) {
+                        elseStores.put(b, newElseStore);
+                        storeChanged = true;
+                    }
+                    if (storeChanged) {
+                        inputs.put(b, new TransferInput<>(node, this, newThenStore, newElseStore));
+                        addBlockToWorklist = true;
+                    }
+                }
+            }
+        }
+
+        if (addBlockToWorklist) {
+            addToWorklist(b);
+        }
+    }
+
+    // copy of the private super.mergeStores()
+    private static FlowStore mergeStores(FlowStore newStore, @Nullable FlowStore previousStore, boolean shouldWiden) {
+        if (previousStore == null) {
+            return newStore;
+        } else if (shouldWiden) {
+            return newStore.widenedUpperBound(previousStore);
+        } else {
+            return newStore.leastUpperBound(previousStore);
+        }
+    }
+
     @Override
     protected boolean isIgnoredExceptionType(TypeMirror exceptionType) {
         // TODO: support this
@@ -125,10 +261,11 @@ public final class FlowAnalysis extends ForwardAnalysisImpl<FlowValue, FlowStore
         super.setCurrentNode(currentNode);
     }
 
-    private FlowStore getStoreBefore(Set<Node> nodes) {
+    private @Nullable FlowStore getStoreBefore(Set<Node> nodes) {
+        Map<Node, FlowStore> stores = getStoresBefore();
         FlowStore merge = null;
         for (Node node : nodes) {
-            FlowStore s = getStoreBefore(node);
+            FlowStore s = stores.get(node);
             if (merge == null) {
                 merge = s;
             } else if (s != null) {
@@ -138,19 +275,39 @@ public final class FlowAnalysis extends ForwardAnalysisImpl<FlowValue, FlowStore
         return merge;
     }
 
-    private FlowStore getStoreBefore(Node node) {
-        Block block = node.getBlock();
-        TransferInput<FlowValue, FlowStore> transferInput = getInput(block);
-        if (transferInput == null) {
-            return null;
+    /**
+     * Returns the store before each node of the analyzed CFG, except the nodes of blocks that weren't reached.
+     * The transfer functions are run once over each block when this is first called after the analysis,
+     * instead of once for each query up to the queried node.
+     */
+    private IdentityHashMap<Node, FlowStore> getStoresBefore() {
+        if (storesBefore != null) {
+            return storesBefore;
         }
 
-        return AnalysisResult.runAnalysisFor(
-                node,
-                BeforeOrAfter.BEFORE,
-                transferInput,
-                getNodeValues(),
-                flowContext.getAnalysisCaches());
+        storesBefore = new IdentityHashMap<>();
+        IdentityHashMap<Node, FlowValue> nodeValues = getNodeValues();
+        for (Block block : Objects.requireNonNull(cfg).getAllBlocks()) {
+            List<Node> nodes = block.getNodes();
+            TransferInput<FlowValue, FlowStore> input = getInput(block);
+            if (nodes.isEmpty() || input == null) {
+                continue;
+            }
+
+            Map<TransferInput<FlowValue, FlowStore>, IdentityHashMap<Node, TransferResult<FlowValue, FlowStore>>>
+                    results = new IdentityHashMap<>();
+            runAnalysisFor(nodes.get(nodes.size() - 1), BeforeOrAfter.AFTER, input, nodeValues, results);
+            IdentityHashMap<Node, TransferResult<FlowValue, FlowStore>> nodeResults =
+                    Objects.requireNonNull(results.get(input));
+
+            // same stores as runAnalysisFor(node, BeforeOrAfter.BEFORE, ...)
+            TransferInput<FlowValue, FlowStore> inputBefore = input;
+            for (Node node : nodes) {
+                storesBefore.put(node, inputBefore.getRegularStore());
+                inputBefore = new TransferInput<>(node, this, Objects.requireNonNull(nodeResults.get(node)));
+            }
+        }
+        return storesBefore;
     }
 
     // TODO: does this make sense?
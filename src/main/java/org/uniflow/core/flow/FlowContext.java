@@ -1,17 +1,18 @@
 package org.uniflow.core.flow;
 
+import com.google.common.cache.CacheStats;
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.tree.Tree;
 import com.sun.source.util.TreePath;
 import com.sun.tools.javac.util.Context;
 import org.uniflow.core.PluginOptions;
+import org.uniflow.util.WeightedCache;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.dataflow.analysis.AnalysisResult;
 import org.checkerframework.dataflow.analysis.TransferInput;
 import org.checkerframework.dataflow.analysis.TransferResult;
 import org.checkerframework.dataflow.cfg.ControlFlowGraph;
 import org.checkerframework.dataflow.cfg.node.Node;
-import org.checkerframework.javacutil.CollectionUtils;
 
 import java.util.Collections;
 import java.util.IdentityHashMap;
@@ -19,11 +20,17 @@ import java.util.Map;
 
 public final class FlowContext {
 
+    // Rough estimates of the memory retained by a value of a store and by the result of a node in the
+    // analysis caches. Most stores of the results share their values with the input store.
+    private static final long STORE_VALUE_BYTES = 64;
+
+    private static final long NODE_RESULT_BYTES = 256;
+
     private final GeneralContext generalContext;
 
     private final Map<Tree, TreePath> artificialTrees;
 
-    private final Map<TransferInput<FlowValue, FlowStore>,
+    private final WeightedCache<TransferInput<FlowValue, FlowStore>,
             IdentityHashMap<Node, TransferResult<FlowValue, FlowStore>>> analysisCaches;
 
     private AnalysisResult<FlowValue, FlowStore> flowResult;
@@ -47,12 +54,20 @@ public final class FlowContext {
         PluginOptions options = PluginOptions.instance(context);
         generalContext = GeneralContext.instance(context);
         artificialTrees = new IdentityHashMap<>();
-        analysisCaches = CollectionUtils.createLRUCache(options.getCacheSize());
+        analysisCaches = new WeightedCache<>(options.getCacheMemoryBytes(), FlowContext::estimateMemory);
         flowResult = new AnalysisResult<>(analysisCaches);
 
         context.put(FlowContext.class, this);
     }
 
+    private static long estimateMemory(TransferInput<FlowValue, FlowStore> input,
+                                       IdentityHashMap<Node, TransferResult<FlowValue, FlowStore>> results) {
+        long storeSize = input.containsTwoStores()
+                ? input.getThenStore().size() + input.getElseStore().size()
+                : input.getRegularStore().size();
+        return STORE_VALUE_BYTES * storeSize + NODE_RESULT_BYTES * results.size();
+    }
+
     void reset() {
         analysisCaches.clear();
         artificialTrees.clear();
@@ -81,6 +96,10 @@ public final class FlowContext {
         return analysisCaches;
     }
 
+    public CacheStats getAnalysisCacheStats() {
+        return analysisCaches.stats();
+    }
+
     public AnalysisResult<FlowValue, FlowStore> getFlowResult() {
         return flowResult;
     }
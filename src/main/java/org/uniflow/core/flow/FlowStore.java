@@ -32,15 +32,13 @@ import org.slf4j.LoggerFactory;
 
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Types;
-import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.StringJoiner;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
 
 public final class FlowStore implements Store<FlowStore>, UniqueId {
 
@@ -57,22 +55,27 @@ public final class FlowStore implements Store<FlowStore>, UniqueId {
 
     private @Nullable FlowValue thisValue;
 
-    private final Map<LocalVariable, FlowValue> localVarValues;
-    private final Map<FieldAccess, FlowValue> fieldValues;
-    private final Map<ArrayAccess, FlowValue> arrayValues;
-    private final Map<MethodCall, FlowValue> methodValues;
-    private final Map<ClassName, FlowValue> classValues;
+    // The maps are shared with copies of this store until either is modified, as most transfer functions
+    // copy their input store but change only a few values.
+    private final CopyOnWriteMap<LocalVariable, FlowValue> localVarValues;
+    private final CopyOnWriteMap<FieldAccess, FlowValue> fieldValues;
+    private final CopyOnWriteMap<ArrayAccess, FlowValue> arrayValues;
+    private final CopyOnWriteMap<MethodCall, FlowValue> methodValues;
+    private final CopyOnWriteMap<ClassName, FlowValue> classValues;
+
+    // If not null, changes of this store only change the slots of these hierarchies. Not copied.
+    private @Nullable Set<QualifierHierarchy> writableHierarchies;
 
     public FlowStore(Context context) {
         this.context = context;
         this.types = JavacTypes.instance(context);
         this.options = PluginOptions.instance(context);
         this.thisValue = null;
-        this.localVarValues = new LinkedHashMap<>();
-        this.fieldValues = new LinkedHashMap<>();
-        this.arrayValues = new LinkedHashMap<>();
-        this.methodValues = new LinkedHashMap<>();
-        this.classValues = new LinkedHashMap<>();
+        this.localVarValues = new CopyOnWriteMap<>();
+        this.fieldValues = new CopyOnWriteMap<>();
+        this.arrayValues = new CopyOnWriteMap<>();
+        this.methodValues = new CopyOnWriteMap<>();
+        this.classValues = new CopyOnWriteMap<>();
     }
 
     public FlowStore(FlowStore other) {
@@ -80,11 +83,11 @@ public final class FlowStore implements Store<FlowStore>, UniqueId {
         types = other.types;
         options = other.options;
         thisValue = other.thisValue;
-        localVarValues = new LinkedHashMap<>(other.localVarValues);
-        fieldValues = new LinkedHashMap<>(other.fieldValues);
-        arrayValues = new LinkedHashMap<>(other.arrayValues);
-        methodValues = new LinkedHashMap<>(other.methodValues);
-        classValues = new LinkedHashMap<>(other.classValues);
+        localVarValues = other.localVarValues.copy();
+        fieldValues = other.fieldValues.copy();
+        arrayValues = other.arrayValues.copy();
+        methodValues = other.methodValues.copy();
+        classValues = other.classValues.copy();
     }
 
     @Override
@@ -100,6 +103,9 @@ public final class FlowStore implements Store<FlowStore>, UniqueId {
         if (!(o instanceof FlowStore other)) {
             return false;
         }
+        if (sharesValuesWith(other)) {
+            return true;
+        }
 
         return Objects.equals(thisValue, other.thisValue)
                 && localVarValues.equals(other.localVarValues)
@@ -121,6 +127,26 @@ public final class FlowStore implements Store<FlowStore>, UniqueId {
 
     @Override
     public FlowStore leastUpperBound(FlowStore other) {
+        return upperBound(other, FlowValue::leastUpperBound);
+    }
+
+    /**
+     * Like {@link #leastUpperBound(FlowStore)}, but bounds the values of this store by the merge slots created
+     * when widening {@code previous}, instead of creating new merge slots in every iteration of a loop.
+     *
+     * @param previous the store at the same location in the previous iteration of a loop
+     */
+    @Override
+    public FlowStore widenedUpperBound(FlowStore previous) {
+        return upperBound(previous, FlowValue::widenedUpperBound);
+    }
+
+    private FlowStore upperBound(FlowStore other, BinaryOperator<FlowValue> merger) {
+        if (sharesValuesWith(other)) {
+            // typically a loop head whose back edge didn't change anything
+            return copy();
+        }
+
         FlowStore newStore = new FlowStore(context);
 
         if (options.getLogLevel().allows(PluginOptions.LogLevel.DEBUG)) {
@@ -128,13 +154,13 @@ public final class FlowStore implements Store<FlowStore>, UniqueId {
         }
 
         if (thisValue != null && other.thisValue != null) {
-            newStore.thisValue = thisValue.leastUpperBound(other.thisValue);
+            newStore.thisValue = merger.apply(thisValue, other.thisValue);
         }
-        leastUpperBound(localVarValues, other.localVarValues, newStore.localVarValues);
-        leastUpperBound(fieldValues, other.fieldValues, newStore.fieldValues);
-        leastUpperBound(arrayValues, other.arrayValues, newStore.arrayValues);
-        leastUpperBound(methodValues, other.methodValues, newStore.methodValues);
-        leastUpperBound(classValues, other.classValues, newStore.classValues);
+        upperBound(localVarValues, other.localVarValues, newStore.localVarValues, merger);
+        upperBound(fieldValues, other.fieldValues, newStore.fieldValues, merger);
+        upperBound(arrayValues, other.arrayValues, newStore.arrayValues, merger);
+        upperBound(methodValues, other.methodValues, newStore.methodValues, merger);
+        upperBound(classValues, other.classValues, newStore.classValues, merger);
         return newStore;
     }
 
@@ -154,15 +180,78 @@ public final class FlowStore implements Store<FlowStore>, UniqueId {
             replace(classValues, withStore.classValues, returnStore.classValues, forHierarchies);
         } else {
             returnStore.thisValue = FlowValue.replace(thisValue, null, forHierarchies);
-            replace(localVarValues, Collections.emptyMap(), returnStore.localVarValues, forHierarchies);
-            replace(fieldValues, Collections.emptyMap(), returnStore.fieldValues, forHierarchies);
-            replace(arrayValues, Collections.emptyMap(), returnStore.arrayValues, forHierarchies);
-            replace(methodValues, Collections.emptyMap(), returnStore.methodValues, forHierarchies);
-            replace(classValues, Collections.emptyMap(), returnStore.classValues, forHierarchies);
+            replace(localVarValues, new CopyOnWriteMap<>(), returnStore.localVarValues, forHierarchies);
+            replace(fieldValues, new CopyOnWriteMap<>(), returnStore.fieldValues, forHierarchies);
+            replace(arrayValues, new CopyOnWriteMap<>(), returnStore.arrayValues, forHierarchies);
+            replace(methodValues, new CopyOnWriteMap<>(), returnStore.methodValues, forHierarchies);
+            replace(classValues, new CopyOnWriteMap<>(), returnStore.classValues, forHierarchies);
         }
         return returnStore;
     }
 
+    /**
+     * @return the number of values in this store
+     */
+    int size() {
+        return (thisValue != null ? 1 : 0)
+                + localVarValues.size()
+                + fieldValues.size()
+                + arrayValues.size()
+                + methodValues.size()
+                + classValues.size();
+    }
+
+    /**
+     * Restricts the following changes of this store to the slots of {@code hierarchies}, or lifts the
+     * restriction if {@code hierarchies} is null. Then a new value only replaces the slots of these hierarchies
+     * in the old value, and removing a value only removes these slots from it, so the transfer functions of
+     * several type systems can change the same store. Copies of this store are not restricted.
+     */
+    public void setWritableHierarchies(@Nullable Set<QualifierHierarchy> hierarchies) {
+        this.writableHierarchies = hierarchies;
+    }
+
+    /**
+     * Returns the value that replaces {@code oldValue} when {@code newValue} is written, which is null if the
+     * entry should be removed.
+     */
+    private @Nullable FlowValue writableValue(@Nullable FlowValue oldValue, @Nullable FlowValue newValue) {
+        if (writableHierarchies == null) {
+            return newValue;
+        }
+        return FlowValue.replace(oldValue, newValue, writableHierarchies);
+    }
+
+    private <T extends JavaExpression> void updateValues(CopyOnWriteMap<T, FlowValue> valuesMap,
+                                                         BiFunction<T, FlowValue, @Nullable FlowValue> updater) {
+        if (writableHierarchies == null) {
+            valuesMap.updateAll(updater);
+        } else {
+            valuesMap.updateAll((javaExp, oldValue) -> writableValue(oldValue, updater.apply(javaExp, oldValue)));
+        }
+    }
+
+    private void clearValuesMap(CopyOnWriteMap<? extends JavaExpression, FlowValue> valuesMap) {
+        if (writableHierarchies == null) {
+            valuesMap.clear();
+        } else {
+            valuesMap.updateAll((javaExp, oldValue) -> writableValue(oldValue, null));
+        }
+    }
+
+    /**
+     * Returns true if this store and {@code other} are known to be equal without comparing their values,
+     * because one is a copy of the other and neither has changed since.
+     */
+    private boolean sharesValuesWith(FlowStore other) {
+        return thisValue == other.thisValue
+                && localVarValues.sharesEntriesWith(other.localVarValues)
+                && fieldValues.sharesEntriesWith(other.fieldValues)
+                && arrayValues.sharesEntriesWith(other.arrayValues)
+                && methodValues.sharesEntriesWith(other.methodValues)
+                && classValues.sharesEntriesWith(other.classValues);
+    }
+
     private void debugLeastUpperBound(FlowStore other) {
         if (thisValue != null || other.thisValue != null) {
             if (thisValue == null || other.thisValue == null) {
@@ -194,27 +283,27 @@ public final class FlowStore implements Store<FlowStore>, UniqueId {
      * the information depending on the type of the expression {@code forExpression}).
      */
     public void clearValue(JavaExpression forExpression) {
-        Map<? extends JavaExpression, FlowValue> valuesMap = getValuesMapByClass(forExpression.getClass());
+        CopyOnWriteMap<? extends JavaExpression, FlowValue> valuesMap = getValuesMapByClass(forExpression.getClass());
         if (valuesMap != null) {
-            valuesMap.remove(forExpression);
+            valuesMap.update(forExpression, oldValue -> writableValue(oldValue, null));
         } else if (forExpression instanceof ThisReference) {
-            thisValue = null;
+            thisValue = writableValue(thisValue, null);
         }
     }
 
     public void clearValues(Class<? extends JavaExpression>... forExpressions) {
         for (Class<? extends JavaExpression> exprClass : forExpressions) {
-            Map<? extends JavaExpression, FlowValue> valuesMap = getValuesMapByClass(exprClass);
+            CopyOnWriteMap<? extends JavaExpression, FlowValue> valuesMap = getValuesMapByClass(exprClass);
             if (valuesMap != null) {
-                valuesMap.clear();
+                clearValuesMap(valuesMap);
             } else if (exprClass == ThisReference.class) {
-                thisValue = null;
+                thisValue = writableValue(thisValue, null);
             }
         }
     }
 
     public @Nullable FlowValue getValue(JavaExpression expr) {
-        Map<? extends JavaExpression, FlowValue> valuesMap = getValuesMapByClass(expr.getClass());
+        CopyOnWriteMap<? extends JavaExpression, FlowValue> valuesMap = getValuesMapByClass(expr.getClass());
         if (valuesMap != null) {
             return valuesMap.get(expr);
         } else if (expr instanceof ThisReference) {
@@ -232,14 +321,6 @@ public final class FlowStore implements Store<FlowStore>, UniqueId {
         return null;
     }
 
-
-    @Override
-    public FlowStore widenedUpperBound(FlowStore previous) {
-        // TODO: support widening
-        return leastUpperBound(previous);
-    }
-
-
     /**
      * Can the objects {@code a} and {@code b} be aliases? Returns a conservative answer (i.e.,
      * returns {@code true} if not enough information is available to determine aliasing).
@@ -324,14 +405,14 @@ public final class FlowStore implements Store<FlowStore>, UniqueId {
             return;
         }
 
-        Map<? extends JavaExpression, FlowValue> valuesMap = getValuesMapByClass(expr.getClass());
+        CopyOnWriteMap<? extends JavaExpression, FlowValue> valuesMap = getValuesMapByClass(expr.getClass());
         FlowValue oldValue = null;
         if (valuesMap != null) {
             oldValue = valuesMap.get(expr);
         } else if (expr instanceof ThisReference) {
             oldValue = thisValue;
         }
-        FlowValue mergedValue = merger.apply(oldValue, newValue);
+        FlowValue mergedValue = writableValue(oldValue, merger.apply(oldValue, newValue));
 
         if (mergedValue == null) {
             return;
@@ -432,38 +513,17 @@ public final class FlowStore implements Store<FlowStore>, UniqueId {
      * </ol>
      */
     private void removeConflicting(LocalVariable var) {
-        final Iterator<Map.Entry<FieldAccess, FlowValue>> fieldValuesIterator =
-                fieldValues.entrySet().iterator();
-        while (fieldValuesIterator.hasNext()) {
-            Map.Entry<FieldAccess, FlowValue> entry = fieldValuesIterator.next();
-            FieldAccess otherFieldAccess = entry.getKey();
-            // case 1:
-            if (otherFieldAccess.containsSyntacticEqualJavaExpression(var)) {
-                fieldValuesIterator.remove();
-            }
-        }
+        // case 1:
+        updateValues(fieldValues, (otherFieldAccess, otherVal) ->
+                otherFieldAccess.containsSyntacticEqualJavaExpression(var) ? null : otherVal);
 
-        final Iterator<Map.Entry<ArrayAccess, FlowValue>> arrayValuesIterator =
-                arrayValues.entrySet().iterator();
-        while (arrayValuesIterator.hasNext()) {
-            Map.Entry<ArrayAccess, FlowValue> entry = arrayValuesIterator.next();
-            ArrayAccess otherArrayAccess = entry.getKey();
-            // case 2:
-            if (otherArrayAccess.containsSyntacticEqualJavaExpression(var)) {
-                arrayValuesIterator.remove();
-            }
-        }
+        // case 2:
+        updateValues(arrayValues, (otherArrayAccess, otherVal) ->
+                otherArrayAccess.containsSyntacticEqualJavaExpression(var) ? null : otherVal);
 
-        final Iterator<Map.Entry<MethodCall, FlowValue>> methodValuesIterator =
-                methodValues.entrySet().iterator();
-        while (methodValuesIterator.hasNext()) {
-            Map.Entry<MethodCall, FlowValue> entry = methodValuesIterator.next();
-            MethodCall otherMethodAccess = entry.getKey();
-            // case 3:
-            if (otherMethodAccess.containsSyntacticEqualJavaExpression(var)) {
-                methodValuesIterator.remove();
-            }
-        }
+        // case 3:
+        updateValues(methodValues, (otherMethodAccess, otherVal) ->
+                otherMethodAccess.containsSyntacticEqualJavaExpression(var) ? null : otherVal);
     }
 
     /**
@@ -489,45 +549,33 @@ public final class FlowStore implements Store<FlowStore>, UniqueId {
      *     abstract value is not known).
      */
     private void removeConflicting(FieldAccess fieldAccess, @Nullable FlowValue val) {
-        final Iterator<Map.Entry<FieldAccess, FlowValue>> fieldValuesIterator =
-                fieldValues.entrySet().iterator();
-        while (fieldValuesIterator.hasNext()) {
-            Map.Entry<FieldAccess, FlowValue> entry = fieldValuesIterator.next();
-            FieldAccess otherFieldAccess = entry.getKey();
-            FlowValue otherVal = entry.getValue();
+        updateValues(fieldValues, (otherFieldAccess, otherVal) -> {
             // case 2:
             if (otherFieldAccess.getReceiver().containsModifiableAliasOf(this, fieldAccess)) {
-                fieldValuesIterator.remove(); // remove information completely
+                return null; // remove information completely
             }
             // case 1:
             else if (fieldAccess.getField().equals(otherFieldAccess.getField())) {
                 if (canAlias(fieldAccess.getReceiver(), otherFieldAccess.getReceiver())) {
                     if (!otherFieldAccess.isFinal()) {
-                        if (val != null) {
-                            FlowValue newVal = val.leastUpperBound(otherVal);
-                            entry.setValue(newVal);
-                        } else {
-                            // remove information completely
-                            fieldValuesIterator.remove();
-                        }
+                        // null removes information completely
+                        return val != null ? val.leastUpperBound(otherVal) : null;
                     }
                 }
             }
-        }
+            return otherVal;
+        });
 
-        final Iterator<Map.Entry<ArrayAccess, FlowValue>> arrayValuesIterator =
-                arrayValues.entrySet().iterator();
-        while (arrayValuesIterator.hasNext()) {
-            Map.Entry<ArrayAccess, FlowValue> entry = arrayValuesIterator.next();
-            ArrayAccess otherArrayAccess = entry.getKey();
+        updateValues(arrayValues, (otherArrayAccess, otherVal) -> {
             if (otherArrayAccess.containsModifiableAliasOf(this, fieldAccess)) {
                 // remove information completely
-                arrayValuesIterator.remove();
+                return null;
             }
-        }
+            return otherVal;
+        });
 
         // case 3:
-        methodValues.clear();
+        clearValuesMap(methodValues);
     }
 
     /**
@@ -547,51 +595,45 @@ public final class FlowStore implements Store<FlowStore>, UniqueId {
      * </ol>
      */
     private void removeConflicting(ArrayAccess arrayAccess) {
-        final Iterator<Map.Entry<ArrayAccess, FlowValue>> arrayValuesIterator =
-                arrayValues.entrySet().iterator();
-        while (arrayValuesIterator.hasNext()) {
-            Map.Entry<ArrayAccess, FlowValue> entry = arrayValuesIterator.next();
-            ArrayAccess otherArrayAccess = entry.getKey();
+        updateValues(arrayValues, (otherArrayAccess, otherVal) -> {
             // case 1:
             if (otherArrayAccess.containsModifiableAliasOf(this, arrayAccess)) {
-                arrayValuesIterator.remove(); // remove information completely
+                return null; // remove information completely
             } else if (canAlias(arrayAccess.getArray(), otherArrayAccess.getArray())) {
                 // TODO: one could be less strict here, and only raise the abstract
                 // value for all array expressions with potentially aliasing receivers.
-                arrayValuesIterator.remove(); // remove information completely
+                return null; // remove information completely
             }
-        }
+            return otherVal;
+        });
 
         // case 2:
-        final Iterator<Map.Entry<FieldAccess, FlowValue>> fieldValuesIterator =
-                fieldValues.entrySet().iterator();
-        while (fieldValuesIterator.hasNext()) {
-            Map.Entry<FieldAccess, FlowValue> entry = fieldValuesIterator.next();
-            FieldAccess otherFieldAccess = entry.getKey();
+        updateValues(fieldValues, (otherFieldAccess, otherVal) -> {
             JavaExpression otherReceiver = otherFieldAccess.getReceiver();
             if (otherReceiver.containsModifiableAliasOf(this, arrayAccess)
                     && otherReceiver.containsOfClass(ArrayAccess.class)) {
                 // remove information completely
-                fieldValuesIterator.remove();
+                return null;
             }
-        }
+            return otherVal;
+        });
 
         // case 3:
-        methodValues.clear();
+        clearValuesMap(methodValues);
     }
 
     @SuppressWarnings("unchecked")
-    private <T extends JavaExpression> @Nullable Map<T, FlowValue> getValuesMapByClass(Class<T> clazz) {
+    private <T extends JavaExpression> @Nullable CopyOnWriteMap<T, FlowValue> getValuesMapByClass(Class<T> clazz) {
         if (clazz == LocalVariable.class) {
-            return (Map<T, FlowValue>) localVarValues;
+            return (CopyOnWriteMap<T, FlowValue>) localVarValues;
         } else if (clazz == FieldAccess.class) {
-            return (Map<T, FlowValue>) fieldValues;
+            return (CopyOnWriteMap<T, FlowValue>) fieldValues;
         } else if (clazz == MethodCall.class) {
-            return (Map<T, FlowValue>) methodValues;
+            return (CopyOnWriteMap<T, FlowValue>) methodValues;
         } else if (clazz == ArrayAccess.class) {
-            return (Map<T, FlowValue>) arrayValues;
+            return (CopyOnWriteMap<T, FlowValue>) arrayValues;
         } else if (clazz == ClassName.class) {
-            return (Map<T, FlowValue>) classValues;
+            return (CopyOnWriteMap<T, FlowValue>) classValues;
         }
         return null;
     }
@@ -632,17 +674,36 @@ public final class FlowStore implements Store<FlowStore>, UniqueId {
         }
     }
 
-    private static <T extends JavaExpression> void leastUpperBound(Map<T, FlowValue> src1,
-                                                                   Map<T, FlowValue> src2,
-                                                                   Map<T, FlowValue> target) {
+    private static <T extends JavaExpression> void upperBound(CopyOnWriteMap<T, FlowValue> src1,
+                                                              CopyOnWriteMap<T, FlowValue> src2,
+                                                              CopyOnWriteMap<T, FlowValue> target,
+                                                              BinaryOperator<FlowValue> merger) {
+        if (src1.sharesEntriesWith(src2)) {
+            // the upper bound of a value with itself is the value
+            target.assign(src1);
+            return;
+        }
+        // the number of merged values that are the values of src1 and src2 respectively
+        int sameAsSrc1 = 0;
+        int sameAsSrc2 = 0;
         for (Map.Entry<T, FlowValue> e : src2.entrySet()) {
             T javaExp = e.getKey();
             FlowValue val1 = src1.get(javaExp);
             if (val1 != null) {
                 FlowValue val2 = e.getValue();
-                target.put(javaExp, val1.leastUpperBound(val2));
+                FlowValue lub = merger.apply(val1, val2);
+                target.put(javaExp, lub);
+                sameAsSrc1 += lub == val1 ? 1 : 0;
+                sameAsSrc2 += lub == val2 ? 1 : 0;
             }
         }
+        // Share the entries of an unchanged side, so comparing the result with it at the next iteration is
+        // cheap.
+        if (sameAsSrc1 == src1.size() && target.size() == src1.size()) {
+            target.assign(src1);
+        } else if (sameAsSrc2 == src2.size() && target.size() == src2.size()) {
+            target.assign(src2);
+        }
     }
 
     // public FlowStore combine(FlowStore other, boolean inPlace) {
@@ -677,10 +738,15 @@ public final class FlowStore implements Store<FlowStore>, UniqueId {
     //     }
     // }
 
-    private static <T extends JavaExpression> void replace(Map<T, FlowValue> oldSrc,
-                                                           Map<T, FlowValue> newSrc,
-                                                           Map<T, FlowValue> target,
+    private static <T extends JavaExpression> void replace(CopyOnWriteMap<T, FlowValue> oldSrc,
+                                                           CopyOnWriteMap<T, FlowValue> newSrc,
+                                                           CopyOnWriteMap<T, FlowValue> target,
                                                            Set<QualifierHierarchy> forHierarchies) {
+        if (oldSrc.sharesEntriesWith(newSrc)) {
+            // replacing a value with itself gives the value
+            target.assign(oldSrc);
+            return;
+        }
         for (Map.Entry<T, FlowValue> e : newSrc.entrySet()) {
             T javaExp = e.getKey();
             FlowValue oldValue = oldSrc.get(javaExp);
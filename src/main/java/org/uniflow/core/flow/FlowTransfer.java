@@ -1,6 +1,7 @@
 package org.uniflow.core.flow;
 
 import com.sun.tools.javac.util.Context;
+import org.uniflow.core.PluginOptions;
 import org.uniflow.core.TypeSystems;
 import org.uniflow.core.typesystem.QualifierHierarchy;
 import org.uniflow.core.typesystem.TypeSystem;
@@ -29,11 +30,19 @@ public final class FlowTransfer
 
     private final TypeSystems typeSystems;
 
+    private final PluginOptions options;
+
     private @Nullable FlowStore fixedInitialStore;
 
+    // result values of the nodes of the analyzed CFG whose transfer doesn't depend on the input, see
+    // TypeSystemTransfer#isInputIndependent. Only used with --sparse-transfer.
+    private final IdentityHashMap<Node, @Nullable FlowValue> inputIndependentValues;
+
     private FlowTransfer(Context context) {
         this.context = context;
         this.typeSystems = TypeSystems.instance(context);
+        this.options = PluginOptions.instance(context);
+        this.inputIndependentValues = new IdentityHashMap<>();
         assert typeSystems.get().size() > 0;
 
         context.put(FlowTransfer.class, this);
@@ -53,6 +62,9 @@ public final class FlowTransfer
 
     @Override
     public FlowStore initialStore(UnderlyingAST underlyingAST, List<LocalVariableNode> parameters) {
+        // a new CFG is analyzed
+        inputIndependentValues.clear();
+
         FlowStore store = new FlowStore(context);
         for (TypeSystem ts : typeSystems.get()) {
             store.replace(
@@ -69,6 +81,39 @@ public final class FlowTransfer
             Node n,
             TransferInput<FlowValue, FlowStore> input
     ) {
+        if (options.isSparseTransfer()) {
+            if (inputIndependentValues.containsKey(n)) {
+                FlowValue value = inputIndependentValues.get(n);
+                return input.containsTwoStores()
+                        ? new ConditionalTransferResult<>(value, input.getThenStore(), input.getElseStore())
+                        : new RegularTransferResult<>(value, input.getRegularStore());
+            }
+            if (isInputIndependent(n)) {
+                TransferResult<FlowValue, FlowStore> r = transfer(n, input);
+                inputIndependentValues.put(n, r.getResultValue());
+                return r;
+            }
+        }
+        return transfer(n, input);
+    }
+
+    private boolean isInputIndependent(Node n) {
+        for (TypeSystem ts : typeSystems.get()) {
+            if (!ts.getTransferFunction().isInputIndependent(n)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private TransferResult<FlowValue, FlowStore> transfer(
+            Node n,
+            TransferInput<FlowValue, FlowStore> input
+    ) {
+        if (options.isFusedTransfer() && typeSystems.get().size() > 1) {
+            return visitNodeFused(n, input);
+        }
+
         TransferResult<FlowValue, FlowStore> r = null;
         int i = 0;
         int lastIndex = typeSystems.get().size() - 1;
@@ -81,6 +126,37 @@ public final class FlowTransfer
         return r;
     }
 
+    /**
+     * Runs the transfer functions of all type systems on the stores of {@code input} instead of on copies of
+     * them. While a type system runs, the input stores only accept changes to the slots of its hierarchies, so
+     * the transfer functions don't overwrite each other's changes, and the results that keep an input store
+     * are combined without replacing any value.
+     */
+    private TransferResult<FlowValue, FlowStore> visitNodeFused(
+            Node n,
+            TransferInput<FlowValue, FlowStore> input
+    ) {
+        List<FlowStore> inputStores = input.containsTwoStores()
+                ? List.of(input.getThenStore(), input.getElseStore())
+                : List.of(input.getRegularStore());
+        TransferResult<FlowValue, FlowStore> r = null;
+        try {
+            for (TypeSystem ts : typeSystems.get()) {
+                Set<QualifierHierarchy> hierarchies = ts.getQualifierHierarchies();
+                for (FlowStore store : inputStores) {
+                    store.setWritableHierarchies(hierarchies);
+                }
+                TransferResult<FlowValue, FlowStore> thisResult = n.accept(ts.getTransferFunction(), input);
+                r = (r == null) ? thisResult : combineResults(r, thisResult, hierarchies);
+            }
+        } finally {
+            for (FlowStore store : inputStores) {
+                store.setWritableHierarchies(null);
+            }
+        }
+        return r;
+    }
+
     // TODO: improve performance
     private TransferResult<FlowValue, FlowStore> combineResults(TransferResult<FlowValue, FlowStore> prevResult,
                                                                 TransferResult<FlowValue, FlowStore> thisResult,
@@ -23,12 +23,23 @@ public final class FlowValue implements AbstractValue<FlowValue> {
 
     private final Types types;
 
+    /**
+     * Prefer {@link #of(Context, QualifiedType)}, which shares the values of equal types.
+     */
     public FlowValue(Context context, QualifiedType<ProductSlot> type) {
         this.context = context;
         this.type = type;
         this.types = JavacTypes.instance(context);
     }
 
+    /**
+     * @return the value of {@code type}, which is the same object for types with the same Java types and
+     * slots within an analysis task
+     */
+    public static FlowValue of(Context context, QualifiedType<ProductSlot> type) {
+        return FlowValueInterner.instance(context).intern(type);
+    }
+
     @Override
     public boolean equals(@Nullable Object o) {
         if (this == o) return true;
@@ -62,7 +73,23 @@ public final class FlowValue implements AbstractValue<FlowValue> {
         }
 
         QualifiedType<ProductSlot> lubType = ProductSlotUtils.merge(context, this.type, other.type, true);
-        return new FlowValue(context, lubType);
+        return of(context, lubType);
+    }
+
+    /**
+     * @param previous the value at the same location in the previous iteration of a loop
+     */
+    public FlowValue widenedUpperBound(FlowValue previous) {
+        if (this.fastEquals(previous)) {
+            return this;
+        }
+
+        if (!type.structurallyEquals(types, previous.type)) {
+            throw new PluginError("Widening %s and %s is not supported", type, previous.type);
+        }
+
+        QualifiedType<ProductSlot> widenedType = ProductSlotUtils.widen(context, this.type, previous.type);
+        return of(context, widenedType);
     }
 
     public FlowValue greatestLowerBound(FlowValue other) {
@@ -75,7 +102,7 @@ public final class FlowValue implements AbstractValue<FlowValue> {
         }
 
         QualifiedType<ProductSlot> glbType = ProductSlotUtils.merge(context, this.type, other.type, false);
-        return new FlowValue(context, glbType);
+        return of(context, glbType);
     }
 
     public FlowValue replace(@Nullable FlowValue withValue, Set<QualifierHierarchy> forHierarchies) {
@@ -99,7 +126,7 @@ public final class FlowValue implements AbstractValue<FlowValue> {
         if (resultType == this.type) {
             return this;
         }
-        return new FlowValue(context, resultType);
+        return of(context, resultType);
     }
 
     // returns a non-null FlowValue if one of the arguments is non-null
@@ -126,6 +153,6 @@ public final class FlowValue implements AbstractValue<FlowValue> {
                 oldValue.type,
                 newValue.type,
                 incomparableSlotResolver);
-        return new FlowValue(newValue.context, refinedType);
+        return of(newValue.context, refinedType);
     }
 }
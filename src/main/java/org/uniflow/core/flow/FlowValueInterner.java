@@ -0,0 +1,61 @@
+package org.uniflow.core.flow;
+
+import com.sun.tools.javac.util.Context;
+import org.uniflow.core.event.Event;
+import org.uniflow.core.event.EventListener;
+import org.uniflow.core.event.EventManager;
+import org.uniflow.core.model.slot.ProductSlot;
+import org.uniflow.core.model.type.QualifiedType;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shares the {@link FlowValue}s of equal types, so most equal values are the same object and
+ * {@link FlowValue#equals(Object)} and merges of equal values don't compare the types.
+ * <p>
+ * Types are equal if they have the same Java types and the same slots, which is the equality of the
+ * {@link QualifiedType} classes. The values are only kept for the current analysis task.
+ *
+ * @see FlowValue#of(Context, QualifiedType)
+ */
+final class FlowValueInterner implements EventListener {
+
+    private final Context context;
+
+    private final Map<QualifiedType<ProductSlot>, FlowValue> values;
+
+    private FlowValueInterner(Context context) {
+        this.context = context;
+        this.values = new HashMap<>();
+
+        EventManager eventManager = EventManager.instance(context);
+        eventManager.register(this);
+
+        context.put(FlowValueInterner.class, this);
+    }
+
+    static FlowValueInterner instance(Context context) {
+        FlowValueInterner instance = context.get(FlowValueInterner.class);
+        if (instance == null) {
+            instance = new FlowValueInterner(context);
+        }
+        return instance;
+    }
+
+    @Override
+    public void finished(Event e) {
+        if (e instanceof Event.NewAnalysisTask) {
+            values.clear();
+        }
+    }
+
+    FlowValue intern(QualifiedType<ProductSlot> type) {
+        FlowValue value = values.get(type);
+        if (value == null) {
+            value = new FlowValue(context, type);
+            values.put(type, value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,117 @@
+package org.uniflow.core.flow;
+
+import org.checkerframework.dataflow.cfg.ControlFlowGraph;
+import org.checkerframework.dataflow.cfg.block.Block;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * The worklist of {@link FlowAnalysis}, which always returns the pending block that comes first in the
+ * reverse post-order of the CFG.
+ * <p>
+ * In reverse post-order, a block comes after all its predecessors except the ones of back edges, and a loop
+ * header comes before its body. So a block is usually analyzed once all its incoming stores are known, and
+ * when a back edge adds a loop header again, the loop is iterated to its fixpoint before any block after the
+ * loop is analyzed with an intermediate store.
+ * <p>
+ * The worklist of the Checker Framework numbers the blocks with a depth-first traversal that can put a block
+ * before one of its forward predecessors when the block is reachable from several of them, which analyzes
+ * such blocks again.
+ * <p>
+ * The traversal also finds the loop headers, i.e. the targets of back edges, which are the only blocks whose
+ * incoming stores are widened.
+ */
+final class ReversePostOrderWorklist {
+
+    private final Map<Block, Integer> order = new IdentityHashMap<>();
+
+    private final PriorityQueue<Block> queue =
+            new PriorityQueue<>((b1, b2) -> Integer.compare(getOrder(b1), getOrder(b2)));
+
+    private final Set<Block> queued = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    private final Set<Block> loopHeaders = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Clears the worklist and numbers the blocks of {@code cfg}.
+     */
+    void process(ControlFlowGraph cfg) {
+        order.clear();
+        queue.clear();
+        queued.clear();
+        loopHeaders.clear();
+
+        // iterative depth-first traversal that numbers each block after all its successors
+        int postOrder = 0;
+        Set<Block> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        // the blocks on the current path, an edge to one of them is a back edge
+        Set<Block> onPath = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Block> blocks = new ArrayDeque<>();
+        Deque<Iterator<Block>> successors = new ArrayDeque<>();
+        Block entry = cfg.getEntryBlock();
+        visited.add(entry);
+        onPath.add(entry);
+        blocks.push(entry);
+        successors.push(entry.getSuccessors().iterator());
+        while (!blocks.isEmpty()) {
+            Iterator<Block> iterator = successors.peek();
+            if (iterator.hasNext()) {
+                Block successor = iterator.next();
+                if (visited.add(successor)) {
+                    onPath.add(successor);
+                    blocks.push(successor);
+                    successors.push(successor.getSuccessors().iterator());
+                } else if (onPath.contains(successor)) {
+                    loopHeaders.add(successor);
+                }
+            } else {
+                Block block = blocks.pop();
+                onPath.remove(block);
+                // a smaller number comes first, so number from the end
+                order.put(block, -postOrder);
+                successors.pop();
+                ++postOrder;
+            }
+        }
+    }
+
+    /**
+     * @return true if {@code block} is the target of a back edge of the CFG
+     */
+    boolean isLoopHeader(Block block) {
+        return loopHeaders.contains(block);
+    }
+
+    boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    void add(Block block) {
+        if (queued.add(block)) {
+            queue.add(block);
+        }
+    }
+
+    Block poll() {
+        Block block = queue.remove();
+        queued.remove(block);
+        return block;
+    }
+
+    private int getOrder(Block block) {
+        // blocks that aren't reachable from the entry, if any, come last
+        return order.getOrDefault(block, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public String toString() {
+        return "ReversePostOrderWorklist(" + queue + ")";
+    }
+}
@@ -18,6 +18,7 @@ import org.uniflow.core.model.slot.Slot;
 import org.uniflow.core.model.slot.SlotManager;
 import org.uniflow.core.typesystem.QualifierHierarchy;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Objects;
@@ -33,11 +34,17 @@ public final class SlotQualifierHierarchy {
 
     private final FlowContext flowContext;
 
+    /**
+     * ids of the merge slots created by {@link #widenedUpperBound(Slot, Slot)}
+     */
+    private final BitSet wideningSlotIds;
+
     private SlotQualifierHierarchy(Context context) {
         constraintManager = ConstraintManager.instance(context);
         slotManager = SlotManager.instance(context);
         locationManager = LocationManager.instance(context);
         flowContext = FlowContext.instance(context);
+        wideningSlotIds = new BitSet();
 
         context.put(SlotQualifierHierarchy.class, this);
     }
@@ -131,6 +138,34 @@ public final class SlotQualifierHierarchy {
         return result;
     }
 
+    /**
+     * Returns an upper bound of {@code previous} and {@code next}, where {@code previous} is the slot at the
+     * same location in the previous iteration of a loop. Unlike {@link #leastUpperBound(Slot, Slot)}, this
+     * doesn't create a new merge slot in every iteration: once a merge slot is created by widening, later
+     * slots are bounded by it instead, so the loop reaches its fixpoint.
+     */
+    public Slot widenedUpperBound(Slot next, Slot previous) {
+        Preconditions.checkArgument(next.getOwner() == previous.getOwner());
+
+        if (previous instanceof MergeSlot mergeSlot && wideningSlotIds.get(mergeSlot.getId())) {
+            Constraint mergeIsSuperOfNext = getSubtypeConstraint(next, mergeSlot);
+            if (!(mergeIsSuperOfNext instanceof AlwaysTrueConstraint)) {
+                constraintManager.addUnexplainedConstraint(mergeSlot.getOwner(), mergeIsSuperOfNext);
+                slotManager.addMergedInto(next, mergeSlot);
+            }
+            return mergeSlot;
+        }
+
+        // Only merge slots created here are widened. Other merge slots may be used before the loop, where
+        // bounding them by values from the loop would lose precision.
+        boolean isNew = slotManager.getExistingMergeSlot(next, previous, true) == null;
+        Slot lub = leastUpperBound(next, previous);
+        if (isNew && lub instanceof MergeSlot && lub != next && lub != previous) {
+            wideningSlotIds.set(lub.getId());
+        }
+        return lub;
+    }
+
     public Slot greatestLowerBound(Slot slot1, Slot slot2) {
         Preconditions.checkArgument(slot1.getOwner() == slot2.getOwner());
         QualifierHierarchy qualifierHierarchy = slot1.getOwner();
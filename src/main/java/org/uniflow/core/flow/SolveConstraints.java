@@ -1,8 +1,8 @@
 package org.uniflow.core.flow;
 
-import com.google.common.collect.SetMultimap;
 import com.google.common.io.Files;
 import com.google.common.io.Resources;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sun.tools.javac.resources.CompilerProperties.Errors;
 import com.sun.tools.javac.resources.CompilerProperties.Notes;
 import com.sun.tools.javac.resources.CompilerProperties.Warnings;
@@ -23,8 +23,15 @@ import org.uniflow.core.model.slot.Slot;
 import org.uniflow.core.model.slot.SlotManager;
 import org.uniflow.core.model.slot.SourceSlot;
 import org.uniflow.core.model.util.SlotLocator;
+import org.uniflow.core.model.util.serialization.BinarySerializer;
+import org.uniflow.core.model.util.serialization.ConstraintSegments;
+import org.uniflow.core.solver.ConstraintSimplifier;
+import org.uniflow.core.solver.ExternalMaxSatSolver;
 import org.uniflow.core.solver.InferenceResult;
+import org.uniflow.core.solver.InferenceSolver;
+import org.uniflow.core.solver.LatticeSolver;
 import org.uniflow.core.solver.MaxSat2TypeSolver;
+import org.uniflow.core.solver.SolutionCache;
 import org.uniflow.core.typesystem.QualifierHierarchy;
 import org.uniflow.core.typesystem.TypeSystem;
 import org.uniflow.util.JaifApplier;
@@ -37,13 +44,20 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.annotation.Annotation;
 import java.nio.charset.StandardCharsets;
-import java.util.Collections;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 public final class SolveConstraints {
 
@@ -61,6 +75,10 @@ public final class SolveConstraints {
 
     private final ConstraintManager constraintManager;
 
+    private final ConstraintSegments constraintSegments;
+
+    private final SolutionCache solutionCache;
+
     private final Properties properties;
 
     private final Log log;
@@ -71,6 +89,9 @@ public final class SolveConstraints {
         this.slotLocator = SlotLocator.instance(context);
         this.slotManager = SlotManager.instance(context);
         this.constraintManager = ConstraintManager.instance(context);
+        this.constraintSegments = ConstraintSegments.instance(context);
+        // created up front, as the hierarchies may be solved concurrently
+        this.solutionCache = SolutionCache.instance(context);
         this.log = Log.instance(context);
 
         this.properties = loadProperties();
@@ -107,11 +128,10 @@ public final class SolveConstraints {
 
     private void onTypeCheck() {
         // TODO: do we need to use solver?
-        SetMultimap<QualifierHierarchy, Constraint> allConstraints = constraintManager.getEffectiveConstraints();
         for (TypeSystem ts : typeSystems.get()) {
             logger.info("Solving constraints for {}", ts.getClass().getSimpleName());
             for (QualifierHierarchy q : ts.getQualifierHierarchies()) {
-                for (Constraint c : allConstraints.get(q)) {
+                for (Constraint c : constraintManager.getEffectiveConstraints(q)) {
                     if (c instanceof AlwaysFalseConstraint falseConstraint) {
                         reportUnsatConstraint(q, falseConstraint);
                     } else {
@@ -127,35 +147,40 @@ public final class SolveConstraints {
         Set<Class<? extends Annotation>> annotationClasses = new LinkedHashSet<>();
         boolean satisfiable = true;
 
+        List<QualifierHierarchy> qualifierHierarchies = new ArrayList<>();
         for (TypeSystem typeSystem : typeSystems.get()) {
-            for (QualifierHierarchy qualifierHierarchy : typeSystem.getQualifierHierarchies()) {
-                // solve
-                InferenceResult inferenceResult = solveForInference(qualifierHierarchy);
-                if (!inferenceResult.hasSolution()) {
-                    satisfiable = false;
-                    logger.error("Inference for {} was unsat!", qualifierHierarchy.getClass().getSimpleName());
+            qualifierHierarchies.addAll(typeSystem.getQualifierHierarchies());
+        }
 
-                    for (Constraint unsatConstraint : inferenceResult.getUnsatisfiableConstraints()) {
-                        reportUnsatConstraint(qualifierHierarchy, unsatConstraint);
-                    }
-                    continue;
-                }
+        if (options.getConstraintsOutputFile() != null) {
+            BinarySerializer.write(context, Paths.get(options.getConstraintsOutputFile()));
+        }
 
-                // collect solutions to write jaif
-                Map<Integer, Qualifier> solutions = inferenceResult.getSolutions();
-                for (Slot s : slotManager.getSlots()) {
-                    if (s instanceof SourceSlot && s.getOwner() == qualifierHierarchy) {
-                        QualifierLocation location = slotLocator.getLocation(s);
-                        if (location != null && location.isInsertable()) {
-                            Qualifier solution = solutions.get(s.getId());
-                            if (solution == null) continue;
-
-                            AnnotationProxy anno = solution.toAnnotation();
-                            values.put(location, anno.toString());
-                            annotationClasses.add(anno.getAnnotationClass());
-                        }
-                    }
-                }
+        if (constraintSegments.isEnabled()) {
+            // only the constraints of the hierarchy being solved are read back into memory, so the
+            // hierarchies are solved one at a time
+            constraintManager.spill();
+            for (QualifierHierarchy qualifierHierarchy : qualifierHierarchies) {
+                constraintSegments.readBack(qualifierHierarchy);
+                logger.info("Read back {} spilled constraints of {}",
+                        constraintManager.getEffectiveConstraints(qualifierHierarchy).size(),
+                        qualifierHierarchy.getClass().getSimpleName());
+
+                InferenceResult inferenceResult = solveForInference(qualifierHierarchy);
+                satisfiable &= collectResult(qualifierHierarchy, inferenceResult, values, annotationClasses);
+                constraintManager.clear();
+            }
+            solutionCache.save();
+        } else {
+            // solve
+            Map<QualifierHierarchy, InferenceResult> inferenceResults = solveForInference(qualifierHierarchies);
+            solutionCache.save();
+
+            // results are consumed in the order of the hierarchies, so the output doesn't depend on which solve
+            // finishes first
+            for (QualifierHierarchy qualifierHierarchy : qualifierHierarchies) {
+                InferenceResult inferenceResult = inferenceResults.get(qualifierHierarchy);
+                satisfiable &= collectResult(qualifierHierarchy, inferenceResult, values, annotationClasses);
             }
         }
 
@@ -169,6 +194,42 @@ public final class SolveConstraints {
         }
     }
 
+    /**
+     * Reports the unsat constraints of {@code inferenceResult}, or collects its solutions to write the jaif.
+     *
+     * @return true if {@code inferenceResult} has a solution
+     */
+    private boolean collectResult(QualifierHierarchy qualifierHierarchy,
+                                  InferenceResult inferenceResult,
+                                  Map<QualifierLocation, String> values,
+                                  Set<Class<? extends Annotation>> annotationClasses) {
+        if (!inferenceResult.hasSolution()) {
+            logger.error("Inference for {} was unsat!", qualifierHierarchy.getClass().getSimpleName());
+
+            for (Constraint unsatConstraint : inferenceResult.getUnsatisfiableConstraints()) {
+                reportUnsatConstraint(qualifierHierarchy, unsatConstraint);
+            }
+            return false;
+        }
+
+        // collect solutions to write jaif
+        Map<Integer, Qualifier> solutions = inferenceResult.getSolutions();
+        for (Slot s : slotManager.getSlots()) {
+            if (s instanceof SourceSlot && s.getOwner() == qualifierHierarchy) {
+                QualifierLocation location = slotLocator.getLocation(s);
+                if (location != null && location.isInsertable()) {
+                    Qualifier solution = solutions.get(s.getId());
+                    if (solution == null) continue;
+
+                    AnnotationProxy anno = solution.toAnnotation();
+                    values.put(location, anno.toString());
+                    annotationClasses.add(anno.getAnnotationClass());
+                }
+            }
+        }
+        return true;
+    }
+
     private void writeJaif(String content) {
         String outputPath = Objects.requireNonNull(options.getJaifOutputPath());
         File outputFile = new File(outputPath);
@@ -179,20 +240,79 @@ public final class SolveConstraints {
         }
     }
 
-    private InferenceResult solveForInference(QualifierHierarchy qualifierHierarchy) {
-        // TODO: support general solvers
-        MaxSat2TypeSolver solver = new MaxSat2TypeSolver();
-        SetMultimap<QualifierHierarchy, Constraint> allConstraints = constraintManager.getEffectiveConstraints();
+    /**
+     * Solves the constraints of each given hierarchy. Hierarchies don't share slots or constraints, so with
+     * {@link PluginOptions#getSolverThreads()} greater than 1 they are solved concurrently. Slots and constraints
+     * are only read during solving: constraints created by the solvers on other threads, e.g. by
+     * {@link ConstraintSimplifier}, aren't interned by {@link ConstraintManager}.
+     *
+     * @return a map from each hierarchy to its result, iterated in the order of {@code qualifierHierarchies}
+     */
+    private Map<QualifierHierarchy, InferenceResult> solveForInference(List<QualifierHierarchy> qualifierHierarchies) {
+        Map<QualifierHierarchy, InferenceResult> results = new LinkedHashMap<>();
+        int nThreads = Math.min(options.getSolverThreads(), qualifierHierarchies.size());
+        if (nThreads <= 1) {
+            for (QualifierHierarchy qualifierHierarchy : qualifierHierarchies) {
+                results.put(qualifierHierarchy, solveForInference(qualifierHierarchy));
+            }
+            return results;
+        }
+
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("uniflow-solver-%d")
+                .setDaemon(true)
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads, threadFactory);
+        try {
+            Map<QualifierHierarchy, Future<InferenceResult>> futures = new LinkedHashMap<>();
+            for (QualifierHierarchy qualifierHierarchy : qualifierHierarchies) {
+                futures.put(qualifierHierarchy, executor.submit(() -> solveForInference(qualifierHierarchy)));
+            }
+            for (Map.Entry<QualifierHierarchy, Future<InferenceResult>> e : futures.entrySet()) {
+                results.put(e.getKey(), e.getValue().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PluginError(e);
+        } catch (ExecutionException e) {
+            throw new PluginError(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
 
-        Set<Constraint> constraints = allConstraints.get(qualifierHierarchy);
+    private InferenceResult solveForInference(QualifierHierarchy qualifierHierarchy) {
+        InferenceSolver solver = createSolver(qualifierHierarchy, options);
+        Set<Constraint> constraints = constraintManager.getEffectiveConstraints(qualifierHierarchy);
         InferenceResult result = solver.solve(context,
-                Collections.emptyMap(),
+                options.getSolverConfiguration(),
                 slotManager.getSlots().stream().filter(s -> s.getOwner() == qualifierHierarchy).toList(),
                 constraints,
                 qualifierHierarchy);
         return result;
     }
 
+    /**
+     * @return the solver for the constraints of {@code qualifierHierarchy}: {@link LatticeSolver} if it has more
+     * than two qualifiers, otherwise {@link ExternalMaxSatSolver} if an external solver command is given, or
+     * {@link MaxSat2TypeSolver}
+     */
+    public static InferenceSolver createSolver(QualifierHierarchy qualifierHierarchy, PluginOptions options) {
+        // TODO: let the plugin options override the solver of a hierarchy, like --solver of OfflineSolver
+        // the polymorphic qualifier isn't a solution, see LatticeVecIntSerializer
+        long qualifierCount = qualifierHierarchy.getAllDefaultQualifiers().stream()
+                .filter(q -> !qualifierHierarchy.isPolymorphicQualifier(q))
+                .count();
+        if (qualifierCount > 2) {
+            return new LatticeSolver();
+        } else if (options.getExternalSolverCommand() != null) {
+            return new ExternalMaxSatSolver();
+        } else {
+            return new MaxSat2TypeSolver();
+        }
+    }
+
     private void reportUnsatConstraint(QualifierHierarchy q, Constraint c) {
         Set<AnalysisMessage> unsatMessages = constraintManager.getUnsatMessages(q, c);
         if (unsatMessages.isEmpty()) {
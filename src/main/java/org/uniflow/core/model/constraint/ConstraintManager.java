@@ -2,43 +2,206 @@ package org.uniflow.core.model.constraint;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.LinkedHashMultimap;
-import com.google.common.collect.Multimaps;
 import com.google.common.collect.SetMultimap;
 import com.sun.tools.javac.util.Context;
+import org.uniflow.core.event.Event;
+import org.uniflow.core.event.EventListener;
+import org.uniflow.core.event.EventManager;
 import org.uniflow.core.model.constraint.ArithmeticConstraint.ArithmeticOperation;
 import org.uniflow.core.model.constraint.ComparisonConstraint.ComparisonOperation;
 import org.uniflow.core.model.qualifier.Qualifier;
 import org.uniflow.core.model.reporting.AnalysisMessage;
+import org.uniflow.core.model.reporting.MessageTable;
 import org.uniflow.core.model.slot.ArithmeticSlot;
 import org.uniflow.core.model.slot.ComparisonSlot;
 import org.uniflow.core.model.slot.ConstantSlot;
 import org.uniflow.core.model.slot.Slot;
 import org.uniflow.core.model.slot.SlotManager;
+import org.uniflow.core.model.slot.SlotPairIndex;
 import org.uniflow.core.model.slot.VariableSlot;
 import org.uniflow.core.model.slot.ViewpointAdaptationSlot;
+import org.uniflow.core.model.util.serialization.ConstraintSegments;
 import org.uniflow.core.typesystem.QualifierHierarchy;
-import org.checkerframework.checker.nullness.qual.Nullable;
-import org.checkerframework.javacutil.Pair;
 
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.BiFunction;
+
+/**
+ * Creates the constraints and keeps the effective constraints of each qualifier hierarchy.
+ * <p>
+ * The constraints between two slots are interned by their kind and the ids of their slots, so creating a
+ * duplicate returns the existing constraint without allocating. Only the thread that created this manager
+ * interns constraints; other threads, e.g. the solvers of concurrently solved hierarchies, get new constraints
+ * and only read the interned ones. The effective constraints of a hierarchy are
+ * appended to an arena that finds the position of an interned constraint by its index in an int array, so
+ * duplicates are neither boxed nor stored again, and its constraints are iterated in the order they were added.
+ * The unsat messages are kept as ids in the {@link MessageTable} until they are requested.
+ * <p>
+ * If spilling is enabled, the effective constraints and the ids of their unsat messages are appended to the
+ * {@link ConstraintSegments} after each analysis task and dropped from memory, along with the interned
+ * constraints. They are read back to be solved one hierarchy at a time.
+ */
+public final class ConstraintManager implements EventListener {
+
+    /**
+     * The effective constraints of a qualifier hierarchy and their unsat messages, in insertion order. The
+     * constraints can't be changed through this set.
+     */
+    private final class Arena extends AbstractSet<Constraint> {
+
+        private final List<Constraint> constraints = new ArrayList<>();
+
+        // the id of the first unsat message of constraints.get(i), or NONE if it has none
+        private int[] unsatMessages = new int[16];
+
+        // the ids of the other unsat messages, by position
+        private final SetMultimap<Integer, Integer> moreUnsatMessages = LinkedHashMultimap.create();
+
+        // internedPositions[i] is the position of internedConstraints.get(i), or NONE if it isn't in this arena
+        private int[] internedPositions = new int[0];
+
+        // the positions of the constraints that aren't interned
+        private final Map<Constraint, Integer> otherPositions = new HashMap<>();
+
+        int positionOf(Constraint constraint) {
+            int internedIndex = internedIndexOf(constraint);
+            if (internedIndex == SlotPairIndex.NONE) {
+                return otherPositions.getOrDefault(constraint, SlotPairIndex.NONE);
+            }
+            return internedIndex < internedPositions.length
+                    ? internedPositions[internedIndex]
+                    : SlotPairIndex.NONE;
+        }
+
+        void add(Constraint constraint, int unsatMessage) {
+            int position = positionOf(constraint);
+            if (position == SlotPairIndex.NONE) {
+                position = constraints.size();
+                constraints.add(constraint);
+                if (position == unsatMessages.length) {
+                    unsatMessages = Arrays.copyOf(unsatMessages, 2 * position);
+                }
+                unsatMessages[position] = MessageTable.NONE;
+
+                int internedIndex = internedIndexOf(constraint);
+                if (internedIndex == SlotPairIndex.NONE) {
+                    otherPositions.put(constraint, position);
+                } else {
+                    if (internedIndex >= internedPositions.length) {
+                        int oldLength = internedPositions.length;
+                        internedPositions = Arrays.copyOf(internedPositions,
+                                Math.max(internedIndex + 1, 2 * oldLength));
+                        Arrays.fill(internedPositions, oldLength, internedPositions.length, SlotPairIndex.NONE);
+                    }
+                    internedPositions[internedIndex] = position;
+                }
+            }
+
+            if (unsatMessage != MessageTable.NONE) {
+                if (unsatMessages[position] == MessageTable.NONE) {
+                    // most constraints have a single message
+                    unsatMessages[position] = unsatMessage;
+                } else if (unsatMessages[position] != unsatMessage) {
+                    moreUnsatMessages.put(position, unsatMessage);
+                }
+            }
+        }
+
+        int[] getUnsatMessageIds(int position) {
+            if (unsatMessages[position] == MessageTable.NONE) {
+                return new int[0];
+            }
+
+            Set<Integer> more = moreUnsatMessages.get(position);
+            int[] ids = new int[1 + more.size()];
+            ids[0] = unsatMessages[position];
+            int i = 1;
+            for (int unsatMessage : more) {
+                ids[i++] = unsatMessage;
+            }
+            return ids;
+        }
+
+        Set<AnalysisMessage> getUnsatMessages(Constraint constraint) {
+            int position = positionOf(constraint);
+            if (position == SlotPairIndex.NONE || unsatMessages[position] == MessageTable.NONE) {
+                return Set.of();
+            }
+
+            Set<AnalysisMessage> messages = new LinkedHashSet<>();
+            messages.add(messageTable.get(unsatMessages[position]));
+            for (int unsatMessage : moreUnsatMessages.get(position)) {
+                messages.add(messageTable.get(unsatMessage));
+            }
+            return Collections.unmodifiableSet(messages);
+        }
 
-public final class ConstraintManager {
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Constraint constraint && positionOf(constraint) != SlotPairIndex.NONE;
+        }
+
+        @Override
+        public Iterator<Constraint> iterator() {
+            return Iterators.unmodifiableIterator(constraints.iterator());
+        }
+
+        @Override
+        public int size() {
+            return constraints.size();
+        }
+    }
 
     private final SlotManager slotManager;
 
-    private final SetMultimap<QualifierHierarchy, Constraint> effectiveConstraints;
+    private final MessageTable messageTable;
 
-    private final SetMultimap<Pair<QualifierHierarchy, Constraint>, AnalysisMessage> unsatMessages;
+    private final ConstraintSegments constraintSegments;
+
+    private final List<Constraint> internedConstraints;
+
+    // the indices of the interned constraints of each kind in internedConstraints, keyed by their slots
+    private final SlotPairIndex subtypeConstraints;
+
+    private final SlotPairIndex equalityConstraints;
+
+    private final SlotPairIndex inequalityConstraints;
+
+    private final SlotPairIndex comparableConstraints;
+
+    private final Map<QualifierHierarchy, Arena> effectiveConstraints;
+
+    // the only thread that changes the interned constraints
+    private final Thread internThread;
 
     private ConstraintManager(Context context) {
         this.slotManager = SlotManager.instance(context);
-        this.effectiveConstraints = LinkedHashMultimap.create();
-        this.unsatMessages = LinkedHashMultimap.create();
+        this.messageTable = MessageTable.instance(context);
+        this.constraintSegments = ConstraintSegments.instance(context);
+        this.internedConstraints = new ArrayList<>();
+        this.subtypeConstraints = new SlotPairIndex();
+        this.equalityConstraints = new SlotPairIndex();
+        this.inequalityConstraints = new SlotPairIndex();
+        this.comparableConstraints = new SlotPairIndex();
+        this.effectiveConstraints = new LinkedHashMap<>();
+        this.internThread = Thread.currentThread();
+
+        EventManager eventManager = EventManager.instance(context);
+        eventManager.register(this);
 
         context.put(ConstraintManager.class, this);
     }
@@ -51,9 +214,43 @@ public final class ConstraintManager {
         return instance;
     }
 
+    @Override
+    public void finished(Event e) {
+        if (e instanceof Event.NewAnalysisTask && constraintSegments.isEnabled()) {
+            spill();
+        }
+    }
+
+    /**
+     * Appends the effective constraints to the segments and drops them. A constraint that is added again
+     * afterwards is spilled again, and deduplicated when the constraints are read back. The unsat messages
+     * stay in the {@link MessageTable}, as only their ids are spilled.
+     */
+    public void spill() {
+        for (Map.Entry<QualifierHierarchy, Arena> entry : effectiveConstraints.entrySet()) {
+            Arena arena = entry.getValue();
+            constraintSegments.append(entry.getKey(), arena, arena::getUnsatMessageIds);
+        }
+        clear();
+    }
+
+    /**
+     * Drops the effective constraints and the interned constraints, e.g. after the constraints read back from
+     * the {@link ConstraintSegments} are solved.
+     */
+    public void clear() {
+        effectiveConstraints.clear();
+
+        internedConstraints.clear();
+        subtypeConstraints.clear();
+        equalityConstraints.clear();
+        inequalityConstraints.clear();
+        comparableConstraints.clear();
+    }
+
     private void addEffectiveConstraints(QualifierHierarchy owner,
                                          Set<Constraint> constraints,
-                                         @Nullable AnalysisMessage unsatMessage) {
+                                         int unsatMessage) {
         Objects.requireNonNull(owner);
         Objects.requireNonNull(constraints);
 
@@ -61,20 +258,16 @@ public final class ConstraintManager {
             assert c != null;
 
             if (!(c instanceof AlwaysTrueConstraint)) {
-                effectiveConstraints.put(owner, c);
-
-                if (unsatMessage != null) {
-                    unsatMessages.put(Pair.of(owner, c), unsatMessage);
-                }
+                effectiveConstraints.computeIfAbsent(owner, o -> new Arena()).add(c, unsatMessage);
             }
         }
     }
 
     private void addEffectiveConstraints(SetMultimap<QualifierHierarchy, Constraint> constraints,
-                                         @Nullable AnalysisMessage unsatMessage) {
+                                         int unsatMessage) {
         Objects.requireNonNull(constraints);
 
-        for (QualifierHierarchy owner : constraints.keys()) {
+        for (QualifierHierarchy owner : constraints.keySet()) {
             addEffectiveConstraints(owner, constraints.get(owner), unsatMessage);
         }
     }
@@ -84,34 +277,50 @@ public final class ConstraintManager {
         Objects.requireNonNull(owner);
         Objects.requireNonNull(constraint);
 
-        addEffectiveConstraints(owner, Set.of(constraint), null);
+        addEffectiveConstraints(owner, Set.of(constraint), MessageTable.NONE);
     }
 
+    /**
+     * @param unsatMessage the id of the message in the {@link MessageTable}
+     */
     public void addExplainedConstraints(QualifierHierarchy owner,
                                         Set<Constraint> constraints,
-                                        AnalysisMessage unsatMessage) {
-        Objects.requireNonNull(unsatMessage);
+                                        int unsatMessage) {
+        Preconditions.checkArgument(unsatMessage != MessageTable.NONE);
 
         addEffectiveConstraints(owner, constraints, unsatMessage);
     }
 
+    /**
+     * @param unsatMessage the id of the message in the {@link MessageTable}
+     */
     public void addExplainedConstraints(SetMultimap<QualifierHierarchy, Constraint> constraints,
-                                        AnalysisMessage unsatMessage) {
-        Objects.requireNonNull(unsatMessage);
+                                        int unsatMessage) {
+        Preconditions.checkArgument(unsatMessage != MessageTable.NONE);
 
         addEffectiveConstraints(constraints, unsatMessage);
     }
 
-    public SetMultimap<QualifierHierarchy, Constraint> getEffectiveConstraints() {
-        return Multimaps.unmodifiableSetMultimap(effectiveConstraints);
+    /**
+     * @return the effective constraints of each qualifier hierarchy that has any, in insertion order. The
+     * constraints spilled to {@link ConstraintSegments} are not included until they are read back.
+     */
+    public Map<QualifierHierarchy, Set<Constraint>> getEffectiveConstraints() {
+        return Collections.unmodifiableMap(effectiveConstraints);
     }
 
     public Set<Constraint> getEffectiveConstraints(QualifierHierarchy qualifierHierarchy) {
-        return Collections.unmodifiableSet(effectiveConstraints.get(qualifierHierarchy));
+        Arena arena = effectiveConstraints.get(qualifierHierarchy);
+        return arena != null ? arena : Set.of();
+    }
+
+    public int getEffectiveConstraintCount() {
+        return effectiveConstraints.values().stream().mapToInt(Arena::size).sum();
     }
 
     public Set<AnalysisMessage> getUnsatMessages(QualifierHierarchy owner, Constraint constraint) {
-        return unsatMessages.get(Pair.of(owner, constraint));
+        Arena arena = effectiveConstraints.get(owner);
+        return arena != null ? arena.getUnsatMessages(constraint) : Set.of();
     }
 
     public Constraint getForSubtype(Slot subtype, Slot superType) {
@@ -243,6 +452,7 @@ public final class ConstraintManager {
 
     public Constraint getForPreference(VariableSlot variable, ConstantSlot goal, int weight) {
         Preconditions.checkArgument(variable.getOwner() == goal.getOwner());
+        Preconditions.checkArgument(weight >= 0, "Preference weight %s is negative", weight);
         return createPreferenceConstraint(variable, goal, weight);
     }
 
@@ -298,20 +508,54 @@ public final class ConstraintManager {
         return createArithmeticConstraint(op, left, right, result);
     }
 
-    private static SubtypeConstraint createSubtypeConstraint(Slot subtype, Slot superType) {
-        return new AutoValue_SubtypeConstraint(subtype, superType);
+    /**
+     * @return the index of {@code constraint} in {@link #internedConstraints}, or {@link SlotPairIndex#NONE} if
+     * it isn't interned
+     */
+    private int internedIndexOf(Constraint constraint) {
+        if (constraint instanceof SubtypeConstraint c) {
+            return subtypeConstraints.get(c.getSubtype(), c.getSupertype());
+        } else if (constraint instanceof EqualityConstraint c) {
+            return equalityConstraints.get(c.getFirst(), c.getSecond());
+        } else if (constraint instanceof InequalityConstraint c) {
+            return inequalityConstraints.get(c.getFirst(), c.getSecond());
+        } else if (constraint instanceof ComparableConstraint c) {
+            return comparableConstraints.get(c.getFirst(), c.getSecond());
+        }
+        return SlotPairIndex.NONE;
+    }
+
+    private Constraint intern(SlotPairIndex index,
+                              Slot first,
+                              Slot second,
+                              BiFunction<Slot, Slot, Constraint> constructor) {
+        int internedIndex = index.get(first, second);
+        if (internedIndex == SlotPairIndex.NONE && Thread.currentThread() != internThread) {
+            // equal to an interned constraint if one is interned later, so it is still found in the arenas
+            return constructor.apply(first, second);
+        }
+        if (internedIndex == SlotPairIndex.NONE) {
+            internedIndex = internedConstraints.size();
+            internedConstraints.add(constructor.apply(first, second));
+            index.put(first, second, internedIndex);
+        }
+        return internedConstraints.get(internedIndex);
+    }
+
+    private Constraint createSubtypeConstraint(Slot subtype, Slot superType) {
+        return intern(subtypeConstraints, subtype, superType, AutoValue_SubtypeConstraint::new);
     }
 
-    private static EqualityConstraint createEqualityConstraint(Slot first, Slot second) {
-        return new AutoValue_EqualityConstraint(first, second);
+    private Constraint createEqualityConstraint(Slot first, Slot second) {
+        return intern(equalityConstraints, first, second, AutoValue_EqualityConstraint::new);
     }
 
-    private static InequalityConstraint createInequalityConstraint(Slot first, Slot second) {
-        return new AutoValue_InequalityConstraint(first, second);
+    private Constraint createInequalityConstraint(Slot first, Slot second) {
+        return intern(inequalityConstraints, first, second, AutoValue_InequalityConstraint::new);
     }
 
-    private static ComparableConstraint createComparableConstraint(Slot first, Slot second) {
-        return new AutoValue_ComparableConstraint(first, second);
+    private Constraint createComparableConstraint(Slot first, Slot second) {
+        return intern(comparableConstraints, first, second, AutoValue_ComparableConstraint::new);
     }
 
     private static ComparisonConstraint createComparisonConstraint(ComparisonOperation op,
@@ -0,0 +1,14 @@
+package org.uniflow.core.model.location;
+
+/**
+ * The location of a slot whose source location is not known, e.g. a slot read back by
+ * {@link org.uniflow.core.model.util.serialization.BinaryDeserializer}.
+ */
+public enum UnknownLocation implements QualifierLocation {
+    INSTANCE;
+
+    @Override
+    public boolean isInsertable() {
+        return false;
+    }
+}
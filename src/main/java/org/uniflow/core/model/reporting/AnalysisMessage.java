@@ -61,11 +61,7 @@ public abstract class AnalysisMessage {
 
         // TODO: it's strange to allow tree as source, probably move this to a utility method
         if (source instanceof Tree tree) {
-            if (!ASTIndex.indexOf(currentRoot).containsKey(tree)) {
-                // try to verify the tree is under the current root
-                logger.warn("Tree {} is probably not under the current root {}",
-                        tree, currentRoot.getSourceFile().toUri());
-            }
+            checkUnderRoot(currentRoot, tree);
 
             // making the assumption that the tree is under the current root
             source = currentRoot.getSourceFile();
@@ -74,6 +70,14 @@ public abstract class AnalysisMessage {
         return create(source, position, kind, messageKey, args);
     }
 
+    static void checkUnderRoot(CompilationUnitTree currentRoot, Tree tree) {
+        if (!ASTIndex.indexOf(currentRoot).containsKey(tree)) {
+            // try to verify the tree is under the current root
+            logger.warn("Tree {} is probably not under the current root {}",
+                    tree, currentRoot.getSourceFile().toUri());
+        }
+    }
+
     public static AnalysisMessage createError(CompilationUnitTree currentRoot,
                                               Object source,
                                               @CompilerMessageKey String messageKey,
@@ -0,0 +1,144 @@
+package org.uniflow.core.model.reporting;
+
+import com.google.common.base.Preconditions;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.Tree;
+import com.sun.tools.javac.tree.JCTree;
+import com.sun.tools.javac.util.Context;
+import org.checkerframework.checker.compilermsgs.qual.CompilerMessageKey;
+
+import javax.lang.model.element.Element;
+import javax.tools.Diagnostic;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the messages that explain unsat constraints in a compact form, and creates their
+ * {@link AnalysisMessage}s only when they are reported.
+ * <p>
+ * A message is referred to by its id. Its message key is interned and packed with its kind into an int, its
+ * position is kept as three ints, and its arguments are kept in the array they were passed in, so a message
+ * that is never reported costs a few array slots instead of a message, a position and a list of arguments.
+ */
+public final class MessageTable {
+
+    public static final int NONE = -1;
+
+    private static final Diagnostic.Kind[] KINDS = Diagnostic.Kind.values();
+
+    private static final int KIND_BITS = 3;
+
+    private final List<String> messageKeys;
+
+    private final Map<String, Integer> messageKeyIds;
+
+    // (message key id << KIND_BITS) | kind ordinal of each message
+    private int[] keysAndKinds;
+
+    // the start, preferred and end positions of each message, unused if its source is an element
+    private int[] positions;
+
+    // Element or JavaFileObject(source file) of each message
+    private final List<Object> sources;
+
+    private final List<Object[]> args;
+
+    private MessageTable(Context context) {
+        this.messageKeys = new ArrayList<>();
+        this.messageKeyIds = new HashMap<>();
+        this.keysAndKinds = new int[64];
+        this.positions = new int[3 * 64];
+        this.sources = new ArrayList<>();
+        this.args = new ArrayList<>();
+
+        context.put(MessageTable.class, this);
+    }
+
+    public static MessageTable instance(Context context) {
+        MessageTable instance = context.get(MessageTable.class);
+        if (instance == null) {
+            instance = new MessageTable(context);
+        }
+        return instance;
+    }
+
+    /**
+     * @return the id of the message
+     * @see AnalysisMessage#create(CompilationUnitTree, Object, Diagnostic.Kind, String, Object...)
+     */
+    public int add(CompilationUnitTree currentRoot,
+                   Object source,
+                   Diagnostic.Kind kind,
+                   @CompilerMessageKey String messageKey,
+                   Object... args) {
+        Preconditions.checkArgument(source instanceof Element || source instanceof Tree);
+
+        int start = 0;
+        int preferred = 0;
+        int end = 0;
+        if (source instanceof Tree tree) {
+            AnalysisMessage.checkUnderRoot(currentRoot, tree);
+
+            JCTree jcTree = (JCTree) tree;
+            source = currentRoot.getSourceFile();
+            start = jcTree.getStartPosition();
+            preferred = jcTree.getPreferredPosition();
+            end = jcTree.getEndPosition(((JCTree.JCCompilationUnit) currentRoot).endPositions);
+        }
+
+        int id = sources.size();
+        if (id == keysAndKinds.length) {
+            keysAndKinds = Arrays.copyOf(keysAndKinds, 2 * id);
+            positions = Arrays.copyOf(positions, 3 * 2 * id);
+        }
+        int keyId = messageKeyIds.computeIfAbsent(messageKey, k -> {
+            messageKeys.add(k);
+            return messageKeys.size() - 1;
+        });
+        keysAndKinds[id] = (keyId << KIND_BITS) | kind.ordinal();
+        positions[3 * id] = start;
+        positions[3 * id + 1] = preferred;
+        positions[3 * id + 2] = end;
+        sources.add(source);
+        this.args.add(args);
+        return id;
+    }
+
+    public int addError(CompilationUnitTree currentRoot,
+                        Object source,
+                        @CompilerMessageKey String messageKey,
+                        Object... args) {
+        return add(currentRoot, source, Diagnostic.Kind.ERROR, messageKey, args);
+    }
+
+    public int addWarning(CompilationUnitTree currentRoot,
+                          Object source,
+                          @CompilerMessageKey String messageKey,
+                          Object... args) {
+        return add(currentRoot, source, Diagnostic.Kind.WARNING, messageKey, args);
+    }
+
+    /**
+     * @return a new {@link AnalysisMessage} of the message with {@code id}
+     */
+    public AnalysisMessage get(int id) {
+        Preconditions.checkElementIndex(id, sources.size());
+
+        int keyAndKind = keysAndKinds[id];
+        @SuppressWarnings("compilermessages") // the key was a message key when it was added
+        @CompilerMessageKey String messageKey = messageKeys.get(keyAndKind >>> KIND_BITS);
+        Diagnostic.Kind kind = KINDS[keyAndKind & ((1 << KIND_BITS) - 1)];
+
+        SimpleDiagnosticPosition position = null;
+        // the source of a message with a tree is the source file of the tree
+        if (!(sources.get(id) instanceof Element)) {
+            position = SimpleDiagnosticPosition.create(positions[3 * id],
+                    positions[3 * id + 1],
+                    positions[3 * id + 2]);
+        }
+        return AnalysisMessage.create(sources.get(id), position, kind, messageKey, args.get(id));
+    }
+}
@@ -25,8 +25,12 @@ public abstract class SimpleDiagnosticPosition implements JCDiagnostic.Diagnosti
 
     public static SimpleDiagnosticPosition create(CompilationUnitTree root, Tree tree) {
         JCTree jcTree = (JCTree) tree;
-        return new AutoValue_SimpleDiagnosticPosition(jcTree.getStartPosition(),
+        return create(jcTree.getStartPosition(),
                 jcTree.getPreferredPosition(),
                 jcTree.getEndPosition(((JCTree.JCCompilationUnit) root).endPositions));
     }
+
+    public static SimpleDiagnosticPosition create(int startPosition, int preferredPosition, int endPosition) {
+        return new AutoValue_SimpleDiagnosticPosition(startPosition, preferredPosition, endPosition);
+    }
 }
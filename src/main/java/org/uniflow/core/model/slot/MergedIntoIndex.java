@@ -0,0 +1,108 @@
+package org.uniflow.core.model.slot;
+
+import java.util.Arrays;
+
+/**
+ * Records which slots are merged into which merge slots, for either lubs or glbs, and answers whether a slot
+ * is transitively merged into a merge slot.
+ * <p>
+ * The slots a slot is merged into are kept in primitive arrays indexed by slot id. A query searches them
+ * breadth-first with a reused queue and visit marks, so it doesn't allocate, and it terminates when widening
+ * has merged slots into each other in a cycle. Merges are never undone, so the pairs found to be merged are
+ * remembered and answered without a search when they are queried again.
+ */
+final class MergedIntoIndex {
+
+    private static final int[] NO_SLOTS = new int[0];
+
+    // mergedInto[id][0 .. mergedIntoCounts[id]) are the ids of the slots that slot id is merged into
+    private int[][] mergedInto = new int[64][];
+
+    private int[] mergedIntoCounts = new int[64];
+
+    // visitMarks[id] == visitMark if slot id is visited by the current search
+    private int[] visitMarks = new int[64];
+
+    private int visitMark;
+
+    private int[] queue = new int[64];
+
+    private final SlotPairIndex knownMerged = new SlotPairIndex();
+
+    void add(Slot srcSlot, MergeSlot targetSlot) {
+        int src = srcSlot.getId();
+        int target = targetSlot.getId();
+        ensureCapacity(Math.max(src, target));
+
+        int[] targets = mergedInto[src] != null ? mergedInto[src] : NO_SLOTS;
+        int count = mergedIntoCounts[src];
+        for (int i = 0; i < count; ++i) {
+            if (targets[i] == target) {
+                return;
+            }
+        }
+        if (count == targets.length) {
+            targets = Arrays.copyOf(targets, Math.max(2, 2 * count));
+            mergedInto[src] = targets;
+        }
+        targets[count] = target;
+        mergedIntoCounts[src] = count + 1;
+        knownMerged.put(srcSlot, targetSlot, target);
+    }
+
+    boolean isMergedInto(Slot srcSlot, MergeSlot targetSlot) {
+        if (knownMerged.get(srcSlot, targetSlot) != SlotPairIndex.NONE) {
+            return true;
+        }
+
+        int src = srcSlot.getId();
+        int target = targetSlot.getId();
+        if (src >= mergedInto.length) {
+            // not merged into any slot
+            return false;
+        }
+
+        nextVisitMark();
+        visitMarks[src] = visitMark;
+        queue[0] = src;
+        int head = 0;
+        int tail = 1;
+        while (head < tail) {
+            int next = queue[head++];
+            int[] targets = mergedInto[next];
+            int count = mergedIntoCounts[next];
+            for (int i = 0; i < count; ++i) {
+                int mergedSlot = targets[i];
+                if (mergedSlot == target) {
+                    knownMerged.put(srcSlot, targetSlot, target);
+                    return true;
+                }
+                if (visitMarks[mergedSlot] != visitMark) {
+                    visitMarks[mergedSlot] = visitMark;
+                    // each slot is queued at most once per search
+                    queue[tail++] = mergedSlot;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void nextVisitMark() {
+        if (visitMark == Integer.MAX_VALUE) {
+            Arrays.fill(visitMarks, 0);
+            visitMark = 0;
+        }
+        ++visitMark;
+    }
+
+    private void ensureCapacity(int id) {
+        if (id < mergedInto.length) {
+            return;
+        }
+        int capacity = Math.max(id + 1, 2 * mergedInto.length);
+        mergedInto = Arrays.copyOf(mergedInto, capacity);
+        mergedIntoCounts = Arrays.copyOf(mergedIntoCounts, capacity);
+        visitMarks = Arrays.copyOf(visitMarks, capacity);
+        queue = new int[capacity];
+    }
+}
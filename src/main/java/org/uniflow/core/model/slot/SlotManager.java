@@ -2,23 +2,19 @@ package org.uniflow.core.model.slot;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Verify;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.LinkedHashMultimap;
-import com.google.common.collect.SetMultimap;
 import com.sun.tools.javac.util.Context;
 import org.uniflow.core.PluginOptions;
 import org.uniflow.core.model.location.QualifierLocation;
 import org.uniflow.core.model.qualifier.Qualifier;
 import org.uniflow.core.model.util.SlotLocator;
 import org.uniflow.core.typesystem.QualifierHierarchy;
+import org.uniflow.util.WeightedCache;
 import org.checkerframework.checker.nullness.qual.Nullable;
-import org.checkerframework.javacutil.CollectionUtils;
-import org.plumelib.util.Pair;
 
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -36,19 +32,19 @@ public final class SlotManager {
 
     private final Map<Qualifier, ConstantSlot> constantSlots;
 
-    private final Map<Pair<Slot, Slot>, ExistentialSlot> existentialSlots;
+    private final SlotPairIndex existentialSlots;
 
-    private final Map<Pair<Slot, Slot>, ViewpointAdaptationSlot> viewpointAdaptationSlots;
+    private final SlotPairIndex viewpointAdaptationSlots;
 
-    private final Map<Pair<Slot, Slot>, MergeSlot> lubSlots;
+    private final SlotPairIndex lubSlots;
 
-    private final Map<Pair<Slot, Slot>, MergeSlot> glbSlots;
+    private final SlotPairIndex glbSlots;
 
-    private final Map<Set<Integer>, ProductSlot> productSlotsCache;
+    private final WeightedCache<Set<Integer>, ProductSlot> productSlotsCache;
 
-    private final SetMultimap<Integer, Integer> mergedToLubs; // TODO: merge to check
+    private final MergedIntoIndex mergedToLubs; // TODO: merge to check
 
-    private final SetMultimap<Integer, Integer> mergedToGlbs;
+    private final MergedIntoIndex mergedToGlbs;
 
     private SlotManager(Context context) {
         PluginOptions options = PluginOptions.instance(context);
@@ -56,13 +52,14 @@ public final class SlotManager {
         slots = new ArrayList<>();
         slotLocator = SlotLocator.instance(context);
         constantSlots = new LinkedHashMap<>();
-        existentialSlots = new LinkedHashMap<>();
-        viewpointAdaptationSlots = new LinkedHashMap<>();
-        lubSlots = new LinkedHashMap<>();
-        glbSlots = new LinkedHashMap<>();
-        productSlotsCache = CollectionUtils.createLRUCache(options.getCacheSize());
-        mergedToLubs = LinkedHashMultimap.create();
-        mergedToGlbs = LinkedHashMultimap.create();
+        existentialSlots = new SlotPairIndex();
+        viewpointAdaptationSlots = new SlotPairIndex();
+        lubSlots = new SlotPairIndex();
+        glbSlots = new SlotPairIndex();
+        // roughly estimate the memory of a product slot and its key by the number of slots in it
+        productSlotsCache = new WeightedCache<>(options.getCacheMemoryBytes(), (ids, slot) -> 128L + 64L * ids.size());
+        mergedToLubs = new MergedIntoIndex();
+        mergedToGlbs = new MergedIntoIndex();
 
         context.put(SlotManager.class, this);
     }
@@ -80,11 +77,11 @@ public final class SlotManager {
     }
 
     public @Nullable MergeSlot getExistingMergeSlot(Slot slot1, Slot slot2, boolean isLub) {
-        Map<Pair<Slot, Slot>, MergeSlot> cache = isLub ? lubSlots : glbSlots;
+        SlotPairIndex cache = isLub ? lubSlots : glbSlots;
         // case 1: Merge(slot1, slot2) exists
-        MergeSlot directMerge = cache.get(Pair.of(slot1, slot2));
-        if (directMerge != null) {
-            return directMerge;
+        int directMergeId = cache.get(slot1, slot2);
+        if (directMergeId != SlotPairIndex.NONE) {
+            return (MergeSlot) slots.get(directMergeId);
         }
 
         // case 2: slot1 is already merged into slot2
@@ -102,26 +99,9 @@ public final class SlotManager {
     /**
      * @return true if {@code srcSlot} is already merged into {@code targetSlot}
      */
-    private boolean isMergedInto(int srcSlot, MergeSlot targetSlot) {
-        SetMultimap<Integer, Integer> mergedToMap = targetSlot.isLub() ? mergedToLubs : mergedToGlbs;
-        Deque<Integer> queue = new ArrayDeque<>();
-
-        queue.add(srcSlot);
-        while (!queue.isEmpty()) {
-            Integer nextSlot = queue.remove();
-            Set<Integer> mergedToSlots = mergedToMap.get(nextSlot);
-
-            if (mergedToSlots.contains(targetSlot.getId())) {
-                return true;
-            } else {
-                queue.addAll(mergedToSlots);
-            }
-        }
-        return false;
-    }
-
     public boolean isMergedInto(Slot srcSlot, MergeSlot targetSlot) {
-        return isMergedInto(srcSlot.getId(), targetSlot);
+        MergedIntoIndex mergedToIndex = targetSlot.isLub() ? mergedToLubs : mergedToGlbs;
+        return mergedToIndex.isMergedInto(srcSlot, targetSlot);
     }
 
     public boolean isMergedInto(Slot srcSlot, Slot targetSlot, boolean isLub) {
@@ -131,6 +111,10 @@ public final class SlotManager {
         return false;
     }
 
+    public CacheStats getProductSlotCacheStats() {
+        return productSlotsCache.stats();
+    }
+
     public @Nullable Slot getSlot(int id) {
         return 0 <= id && id < slots.size() ? slots.get(id) : null;
     }
@@ -169,13 +153,15 @@ public final class SlotManager {
     public ExistentialSlot createExistentialSlot(QualifierHierarchy owner, QualifierLocation location, Slot potentialSlot, Slot alternativeSlot) {
         Preconditions.checkNotNull(location);
 
-        ExistentialSlot slot = existentialSlots.computeIfAbsent(Pair.of(potentialSlot, alternativeSlot),
-                k -> new AutoValue_ExistentialSlot(slots.size(), owner, potentialSlot, alternativeSlot));
-
-        if (slot.getId() == slots.size()) {
-            slots.add(slot);
-            slotLocator.addLocation(slot, location);
+        int existingId = existentialSlots.get(potentialSlot, alternativeSlot);
+        if (existingId != SlotPairIndex.NONE) {
+            return (ExistentialSlot) slots.get(existingId);
         }
+
+        ExistentialSlot slot = new AutoValue_ExistentialSlot(slots.size(), owner, potentialSlot, alternativeSlot);
+        slots.add(slot);
+        existentialSlots.put(potentialSlot, alternativeSlot, slot.getId());
+        slotLocator.addLocation(slot, location);
         return slot;
     }
 
@@ -187,24 +173,33 @@ public final class SlotManager {
         Preconditions.checkNotNull(location);
         Preconditions.checkArgument(!leftSlot.equals(rightSlot), "Merge is redundant for %s", leftSlot);
 
-        Map<Pair<Slot, Slot>, MergeSlot> cache = isLub ? lubSlots : glbSlots;
-        MergeSlot slot = cache.computeIfAbsent(Pair.of(leftSlot, rightSlot),
-                k -> new AutoValue_MergeSlot(slots.size(), owner, leftSlot, rightSlot, isLub));
-
-        if (slot.getId() == slots.size()) {
+        SlotPairIndex cache = isLub ? lubSlots : glbSlots;
+        int existingId = cache.get(leftSlot, rightSlot);
+        MergeSlot slot;
+        if (existingId != SlotPairIndex.NONE) {
+            slot = (MergeSlot) slots.get(existingId);
+        } else {
+            slot = new AutoValue_MergeSlot(slots.size(), owner, leftSlot, rightSlot, isLub);
             slots.add(slot);
+            cache.put(leftSlot, rightSlot, slot.getId());
             slotLocator.addLocation(slot, location);
         }
-        if (isLub) {
-            mergedToLubs.put(leftSlot.getId(), slot.getId());
-            mergedToLubs.put(rightSlot.getId(), slot.getId());
-        } else {
-            mergedToGlbs.put(leftSlot.getId(), slot.getId());
-            mergedToGlbs.put(rightSlot.getId(), slot.getId());
-        }
+        MergedIntoIndex mergedToIndex = isLub ? mergedToLubs : mergedToGlbs;
+        mergedToIndex.add(leftSlot, slot);
+        mergedToIndex.add(rightSlot, slot);
         return slot;
     }
 
+    /**
+     * Records that {@code srcSlot} is merged into {@code targetSlot} without creating a merge slot, e.g. when
+     * widening bounds {@code srcSlot} by an existing merge slot. Later merges of the two slots return
+     * {@code targetSlot}.
+     */
+    public void addMergedInto(Slot srcSlot, MergeSlot targetSlot) {
+        MergedIntoIndex mergedToIndex = targetSlot.isLub() ? mergedToLubs : mergedToGlbs;
+        mergedToIndex.add(srcSlot, targetSlot);
+    }
+
     public PolymorphicInstanceSlot createPolymorphicInstanceSlot(QualifierHierarchy owner, QualifierLocation location) {
         Preconditions.checkNotNull(location);
 
@@ -232,13 +227,16 @@ public final class SlotManager {
     public ViewpointAdaptationSlot createViewpointAdaptationSlot(QualifierHierarchy owner, QualifierLocation location, Slot receiverSlot, Slot declarationSlot) {
         Preconditions.checkNotNull(location);
 
-        ViewpointAdaptationSlot slot = viewpointAdaptationSlots.computeIfAbsent(Pair.of(receiverSlot, declarationSlot),
-                k -> new AutoValue_ViewpointAdaptationSlot(slots.size(), owner, receiverSlot, declarationSlot));
-
-        if (slot.getId() == slots.size()) {
-            slots.add(slot);
-            slotLocator.addLocation(slot, location);
+        int existingId = viewpointAdaptationSlots.get(receiverSlot, declarationSlot);
+        if (existingId != SlotPairIndex.NONE) {
+            return (ViewpointAdaptationSlot) slots.get(existingId);
         }
+
+        ViewpointAdaptationSlot slot =
+                new AutoValue_ViewpointAdaptationSlot(slots.size(), owner, receiverSlot, declarationSlot);
+        slots.add(slot);
+        viewpointAdaptationSlots.put(receiverSlot, declarationSlot, slot.getId());
+        slotLocator.addLocation(slot, location);
         return slot;
     }
 
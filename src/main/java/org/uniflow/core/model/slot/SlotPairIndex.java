@@ -0,0 +1,99 @@
+package org.uniflow.core.model.slot;
+
+import java.util.Arrays;
+
+/**
+ * Maps ordered pairs of slots to a non-negative int, e.g. the id of the merge slot created for two slots.
+ * <p>
+ * A pair is keyed by the ids of its slots packed into a {@code long}, so a lookup doesn't allocate a key,
+ * and the keys and ids are kept in primitive arrays with open addressing instead of boxed map entries.
+ */
+public final class SlotPairIndex {
+
+    public static final int NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] keys;
+
+    // NONE marks an empty bucket, as the mapped ints are never negative
+    private int[] ids;
+
+    private int size;
+
+    public SlotPairIndex() {
+        clear();
+    }
+
+    /**
+     * @return the int of ({@code first}, {@code second}), or {@link #NONE} if there is none
+     */
+    public int get(Slot first, Slot second) {
+        long key = key(first, second);
+        int mask = keys.length - 1;
+        for (int i = bucket(key, mask); ids[i] != NONE; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return ids[i];
+            }
+        }
+        return NONE;
+    }
+
+    public void put(Slot first, Slot second, int id) {
+        assert id != NONE;
+        if (2 * (size + 1) > keys.length) {
+            resize();
+        }
+        if (insert(keys, ids, key(first, second), id)) {
+            ++size;
+        }
+    }
+
+    public void clear() {
+        keys = new long[INITIAL_CAPACITY];
+        ids = new int[INITIAL_CAPACITY];
+        Arrays.fill(ids, NONE);
+        size = 0;
+    }
+
+    private static long key(Slot first, Slot second) {
+        return ((long) first.getId() << 32) | (second.getId() & 0xFFFFFFFFL);
+    }
+
+    private static int bucket(long key, int mask) {
+        // spread the bits of both ids over the low bits
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * @return true if {@code key} wasn't in the arrays before
+     */
+    private static boolean insert(long[] keys, int[] ids, long key, int id) {
+        int mask = keys.length - 1;
+        int i = bucket(key, mask);
+        while (ids[i] != NONE) {
+            if (keys[i] == key) {
+                ids[i] = id;
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        ids[i] = id;
+        return true;
+    }
+
+    private void resize() {
+        long[] newKeys = new long[keys.length * 2];
+        int[] newIds = new int[ids.length * 2];
+        Arrays.fill(newIds, NONE);
+        for (int i = 0; i < keys.length; ++i) {
+            if (ids[i] != NONE) {
+                insert(newKeys, newIds, keys[i], ids[i]);
+            }
+        }
+        keys = newKeys;
+        ids = newIds;
+    }
+}
@@ -0,0 +1,281 @@
+package org.uniflow.core.model.util.serialization;
+
+import com.sun.tools.javac.util.Context;
+import org.uniflow.core.model.constraint.AlwaysFalseConstraint;
+import org.uniflow.core.model.constraint.ArithmeticConstraint.ArithmeticOperation;
+import org.uniflow.core.model.constraint.ComparisonConstraint.ComparisonOperation;
+import org.uniflow.core.model.constraint.Constraint;
+import org.uniflow.core.model.constraint.ConstraintManager;
+import org.uniflow.core.model.location.UnknownLocation;
+import org.uniflow.core.model.qualifier.Qualifier;
+import org.uniflow.core.model.reporting.PluginError;
+import org.uniflow.core.model.slot.ArithmeticSlot;
+import org.uniflow.core.model.slot.ComparisonSlot;
+import org.uniflow.core.model.slot.ConstantSlot;
+import org.uniflow.core.model.slot.Slot;
+import org.uniflow.core.model.slot.SlotManager;
+import org.uniflow.core.model.slot.VariableSlot;
+import org.uniflow.core.model.slot.ViewpointAdaptationSlot;
+import org.uniflow.core.model.util.serialization.BinarySerializer.ConstraintKind;
+import org.uniflow.core.model.util.serialization.BinarySerializer.QualifierKind;
+import org.uniflow.core.model.util.serialization.BinarySerializer.SlotKind;
+import org.uniflow.core.typesystem.QualifierHierarchy;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads a file written by {@link BinarySerializer} into the {@link SlotManager} and {@link ConstraintManager}
+ * of a fresh {@link Context}.
+ * <p>
+ * The file is memory-mapped and decoded in one pass. The slots are recreated through {@link SlotManager} in
+ * the order of their ids, so they get the same ids as when they were written. The qualifier hierarchies are
+ * instantiated by their no-arg constructors.
+ */
+public final class BinaryDeserializer {
+
+    private final ByteBuffer in;
+
+    private final SlotManager slotManager;
+
+    private final ConstraintManager constraintManager;
+
+    private final List<QualifierHierarchy> hierarchies = new ArrayList<>();
+
+    private BinaryDeserializer(ByteBuffer in, Context context) {
+        this.in = in;
+        this.slotManager = SlotManager.instance(context);
+        this.constraintManager = ConstraintManager.instance(context);
+    }
+
+    /**
+     * Reads {@code file} into the {@link SlotManager} and {@link ConstraintManager} of {@code context}, which
+     * must not contain any slots yet.
+     *
+     * @return the qualifier hierarchies of the file
+     */
+    public static List<QualifierHierarchy> read(Context context, Path file) {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new PluginError(e);
+        }
+
+        BinaryDeserializer deserializer = new BinaryDeserializer(buffer, context);
+        try {
+            deserializer.read();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new PluginError("Truncated or corrupted constraint file %s", file);
+        }
+        return deserializer.hierarchies;
+    }
+
+    /**
+     * Reads {@code count} constraints appended by {@link BinarySerializer#appendConstraints} from {@code in},
+     * whose slots are already in the {@link SlotManager} of {@code context}, and passes each of them to
+     * {@code action} as the constraints it is read as.
+     */
+    static void readConstraints(Context context, ByteBuffer in, int count, Consumer<List<Constraint>> action) {
+        BinaryDeserializer deserializer = new BinaryDeserializer(in, context);
+        try {
+            for (int i = 0; i < count; ++i) {
+                List<Constraint> constraints = new ArrayList<>(1);
+                deserializer.readConstraint(constraints);
+                action.accept(constraints);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new PluginError("Truncated or corrupted constraint segment");
+        }
+    }
+
+    private void read() {
+        if (in.getInt() != BinarySerializer.MAGIC) {
+            throw new PluginError("Not a constraint file");
+        }
+        int version = readVarInt();
+        if (version != BinarySerializer.VERSION) {
+            throw new PluginError("Unsupported constraint file version %d", version);
+        }
+        if (!slotManager.getSlots().isEmpty()) {
+            throw new PluginError("Cannot read constraints into a context that already has slots");
+        }
+
+        int numHierarchies = readVarInt();
+        for (int i = 0; i < numHierarchies; ++i) {
+            hierarchies.add(createHierarchy(readString()));
+        }
+
+        int numSlots = readVarInt();
+        for (int id = 0; id < numSlots; ++id) {
+            Slot slot = createSlot();
+            if (slot.getId() != id) {
+                throw new PluginError("Slot %s was read with id %d", slot, id);
+            }
+        }
+
+        int numOwners = readVarInt();
+        for (int i = 0; i < numOwners; ++i) {
+            QualifierHierarchy owner = hierarchies.get(readVarInt());
+            for (Constraint constraint : readConstraints()) {
+                constraintManager.addUnexplainedConstraint(owner, constraint);
+            }
+        }
+    }
+
+    private static QualifierHierarchy createHierarchy(String className) {
+        try {
+            Class<? extends QualifierHierarchy> clazz = Class.forName(className).asSubclass(QualifierHierarchy.class);
+            return clazz.getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException | ClassCastException | NoSuchMethodException | InstantiationException
+                 | IllegalAccessException | InvocationTargetException e) {
+            throw new PluginError("Cannot instantiate qualifier hierarchy " + className, e);
+        }
+    }
+
+    private Slot createSlot() {
+        SlotKind kind = SlotKind.values()[readVarInt()];
+        QualifierHierarchy owner = hierarchies.get(readVarInt());
+        UnknownLocation location = UnknownLocation.INSTANCE;
+
+        return switch (kind) {
+            case SOURCE -> {
+                int defaultQualifier = readVarInt();
+                yield slotManager.createSourceSlot(
+                        owner,
+                        defaultQualifier == 0 ? null : readSlotRef(defaultQualifier - 1, ConstantSlot.class)
+                );
+            }
+            case CONSTANT -> slotManager.createConstantSlot(owner, readQualifier(owner));
+            case EXISTENTIAL -> slotManager.createExistentialSlot(owner, location, readSlot(Slot.class), readSlot(Slot.class));
+            case REFINEMENT -> slotManager.createRefinementSlot(owner, location, readSlot(Slot.class));
+            case VIEWPOINT_ADAPTATION ->
+                    slotManager.createViewpointAdaptationSlot(owner, location, readSlot(Slot.class), readSlot(Slot.class));
+            case MERGE -> {
+                Slot left = readSlot(Slot.class);
+                Slot right = readSlot(Slot.class);
+                yield slotManager.createMergeSlot(owner, location, left, right, readVarInt() != 0);
+            }
+            case COMPARISON -> slotManager.createComparisonSlot(owner, location);
+            case ARITHMETIC -> slotManager.createArithmeticSlot(owner, location);
+            case POLYMORPHIC_INSTANCE -> slotManager.createPolymorphicInstanceSlot(owner, location);
+        };
+    }
+
+    private Qualifier readQualifier(QualifierHierarchy owner) {
+        QualifierKind kind = QualifierKind.values()[readVarInt()];
+        return switch (kind) {
+            case TOP -> owner.getTopQualifier();
+            case BOTTOM -> owner.getBottomQualifier();
+            case ENUM -> {
+                String className = readString();
+                String name = readString();
+                try {
+                    Class<?> clazz = Class.forName(className);
+                    yield (Qualifier) Enum.valueOf(clazz.asSubclass(Enum.class), name);
+                } catch (ClassNotFoundException | ClassCastException | IllegalArgumentException e) {
+                    throw new PluginError("Cannot read qualifier " + className + "." + name, e);
+                }
+            }
+        };
+    }
+
+    private List<Constraint> readConstraints() {
+        int size = readVarInt();
+        List<Constraint> constraints = new ArrayList<>(size);
+        for (int i = 0; i < size; ++i) {
+            readConstraint(constraints);
+        }
+        return constraints;
+    }
+
+    /**
+     * Reads a constraint and adds it to {@code result}. Only an implication can be read as multiple
+     * constraints, as {@link ConstraintManager#getForImplication} may normalize it into a conjunction.
+     */
+    private void readConstraint(List<Constraint> result) {
+        ConstraintKind kind = ConstraintKind.values()[readVarInt()];
+        switch (kind) {
+            case SUBTYPE -> result.add(constraintManager.getForSubtype(readSlot(Slot.class), readSlot(Slot.class)));
+            case EQUALITY -> result.add(constraintManager.getForEquality(readSlot(Slot.class), readSlot(Slot.class)));
+            case EXISTENTIAL -> {
+                Slot potential = readSlot(Slot.class);
+                List<Constraint> potentialConstraints = readConstraints();
+                List<Constraint> alternateConstraints = readConstraints();
+                result.add(constraintManager.getForExistential(potential, potentialConstraints, alternateConstraints));
+            }
+            case INEQUALITY -> result.add(constraintManager.getForInequality(readSlot(Slot.class), readSlot(Slot.class)));
+            case COMPARABLE -> result.add(constraintManager.getForComparable(readSlot(Slot.class), readSlot(Slot.class)));
+            case COMPARISON -> {
+                ComparisonOperation op = ComparisonOperation.values()[readVarInt()];
+                Slot left = readSlot(Slot.class);
+                Slot right = readSlot(Slot.class);
+                result.add(constraintManager.getForComparison(op, left, right, readSlot(ComparisonSlot.class)));
+            }
+            case VIEWPOINT_ADAPTATION ->
+                    result.add(constraintManager.getForViewpointAdaptation(readSlot(ViewpointAdaptationSlot.class)));
+            case PREFERENCE -> {
+                VariableSlot variable = readSlot(VariableSlot.class);
+                ConstantSlot goal = readSlot(ConstantSlot.class);
+                result.add(constraintManager.getForPreference(variable, goal, readVarInt()));
+            }
+            case IMPLICATION -> {
+                List<Constraint> assumptions = readConstraints();
+                List<Constraint> conclusion = new ArrayList<>(1);
+                readConstraint(conclusion);
+                if (conclusion.size() != 1) {
+                    throw new PluginError("Implication with a compound conclusion %s", conclusion);
+                }
+                result.addAll(constraintManager.getForImplication(assumptions, conclusion.get(0)));
+            }
+            case ARITHMETIC -> {
+                ArithmeticOperation op = ArithmeticOperation.values()[readVarInt()];
+                Slot left = readSlot(Slot.class);
+                Slot right = readSlot(Slot.class);
+                result.add(constraintManager.getForArithmetic(op, left, right, readSlot(ArithmeticSlot.class)));
+            }
+            case ALWAYS_FALSE -> result.add(AlwaysFalseConstraint.instance());
+        }
+    }
+
+    private <T extends Slot> T readSlot(Class<T> type) {
+        return readSlotRef(readVarInt(), type);
+    }
+
+    private <T extends Slot> T readSlotRef(int id, Class<T> type) {
+        @Nullable Slot slot = slotManager.getSlot(id);
+        if (!type.isInstance(slot)) {
+            throw new PluginError("Expected a %s for slot %d, but found %s", type.getSimpleName(), id, slot);
+        }
+        return type.cast(slot);
+    }
+
+    private int readVarInt() {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new PluginError("Malformed varint at offset %d", in.position());
+    }
+
+    private String readString() {
+        byte[] bytes = new byte[readVarInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,377 @@
+package org.uniflow.core.model.util.serialization;
+
+import com.sun.tools.javac.util.Context;
+import org.uniflow.core.model.constraint.AlwaysFalseConstraint;
+import org.uniflow.core.model.constraint.ArithmeticConstraint;
+import org.uniflow.core.model.constraint.ComparableConstraint;
+import org.uniflow.core.model.constraint.ComparisonConstraint;
+import org.uniflow.core.model.constraint.Constraint;
+import org.uniflow.core.model.constraint.ConstraintManager;
+import org.uniflow.core.model.constraint.EqualityConstraint;
+import org.uniflow.core.model.constraint.ExistentialConstraint;
+import org.uniflow.core.model.constraint.ImplicationConstraint;
+import org.uniflow.core.model.constraint.InequalityConstraint;
+import org.uniflow.core.model.constraint.PreferenceConstraint;
+import org.uniflow.core.model.constraint.SubtypeConstraint;
+import org.uniflow.core.model.constraint.ViewpointAdaptationConstraint;
+import org.uniflow.core.model.qualifier.Qualifier;
+import org.uniflow.core.model.reporting.PluginError;
+import org.uniflow.core.model.slot.ArithmeticSlot;
+import org.uniflow.core.model.slot.ComparisonSlot;
+import org.uniflow.core.model.slot.ConstantSlot;
+import org.uniflow.core.model.slot.ExistentialSlot;
+import org.uniflow.core.model.slot.MergeSlot;
+import org.uniflow.core.model.slot.PolymorphicInstanceSlot;
+import org.uniflow.core.model.slot.RefinementSlot;
+import org.uniflow.core.model.slot.Slot;
+import org.uniflow.core.model.slot.SlotManager;
+import org.uniflow.core.model.slot.SourceSlot;
+import org.uniflow.core.model.slot.ViewpointAdaptationSlot;
+import org.uniflow.core.typesystem.QualifierHierarchy;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes all slots and constraints of a compilation to a compact binary file, which can be read back by
+ * {@link BinaryDeserializer} to solve the constraints without running javac again.
+ * <p>
+ * All integers are written as unsigned LEB128 varints. The file consists of:
+ * <ol>
+ *     <li>a header: {@link #MAGIC} and {@link #VERSION};</li>
+ *     <li>the class names of the qualifier hierarchies;</li>
+ *     <li>the slots in the order of their ids, each as a {@link SlotKind} tag, the index of its owner and
+ *     its kind specific fields. Slots are only referred to by id, and only after they are written;</li>
+ *     <li>the effective constraints of each hierarchy, each as a {@link ConstraintKind} tag and its fields.</li>
+ * </ol>
+ * The constraints spilled to {@link ConstraintSegments} are copied after the constraints still in memory.
+ * Source locations and unsat messages are not written.
+ */
+public final class BinarySerializer implements Serializer<Void, Void> {
+
+    static final int MAGIC = 0x55464353; // "UFCS"
+
+    static final int VERSION = 1;
+
+    enum SlotKind {
+        SOURCE, CONSTANT, EXISTENTIAL, REFINEMENT, VIEWPOINT_ADAPTATION, MERGE, COMPARISON, ARITHMETIC,
+        POLYMORPHIC_INSTANCE
+    }
+
+    enum ConstraintKind {
+        SUBTYPE, EQUALITY, EXISTENTIAL, INEQUALITY, COMPARABLE, COMPARISON, VIEWPOINT_ADAPTATION, PREFERENCE,
+        IMPLICATION, ARITHMETIC, ALWAYS_FALSE
+    }
+
+    enum QualifierKind {
+        TOP, BOTTOM, ENUM
+    }
+
+    private final OutputStream out;
+
+    private final Map<QualifierHierarchy, Integer> hierarchyIndices = new HashMap<>();
+
+    private BinarySerializer(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the slots of {@link SlotManager} and the effective constraints of {@link ConstraintManager} to
+     * {@code file}.
+     */
+    public static void write(Context context, Path file) {
+        SlotManager slotManager = SlotManager.instance(context);
+        ConstraintManager constraintManager = ConstraintManager.instance(context);
+        ConstraintSegments constraintSegments = ConstraintSegments.instance(context);
+
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            BinarySerializer serializer = new BinarySerializer(out);
+            serializer.writeInt(MAGIC);
+            serializer.writeVarInt(VERSION);
+
+            List<QualifierHierarchy> hierarchies = new ArrayList<>();
+            for (Slot slot : slotManager.getSlots()) {
+                serializer.addHierarchy(slot.getOwner(), hierarchies);
+            }
+            Set<QualifierHierarchy> owners = new LinkedHashSet<>(constraintManager.getEffectiveConstraints().keySet());
+            owners.addAll(constraintSegments.getOwners());
+            for (QualifierHierarchy owner : owners) {
+                serializer.addHierarchy(owner, hierarchies);
+            }
+            serializer.writeVarInt(hierarchies.size());
+            for (QualifierHierarchy hierarchy : hierarchies) {
+                serializer.writeString(hierarchy.getClass().getName());
+            }
+
+            serializer.writeVarInt(slotManager.getSlots().size());
+            for (Slot slot : slotManager.getSlots()) {
+                slot.serialize(serializer);
+            }
+
+            serializer.writeVarInt(owners.size());
+            for (QualifierHierarchy owner : owners) {
+                serializer.writeVarInt(serializer.hierarchyIndices.get(owner));
+
+                Set<Constraint> constraints = constraintManager.getEffectiveConstraints(owner);
+                serializer.writeVarInt(constraints.size() + constraintSegments.getCount(owner));
+                for (Constraint constraint : constraints) {
+                    serializer.writeConstraint(constraint);
+                }
+                constraintSegments.copyTo(owner, out);
+            }
+        } catch (IOException e) {
+            throw new PluginError(e);
+        }
+    }
+
+    /**
+     * Appends {@code constraints} to {@code out} in the format of the constraints of a hierarchy, without
+     * their count.
+     */
+    static void appendConstraints(OutputStream out, Collection<Constraint> constraints) {
+        BinarySerializer serializer = new BinarySerializer(out);
+        for (Constraint constraint : constraints) {
+            serializer.writeConstraint(constraint);
+        }
+    }
+
+    private void addHierarchy(QualifierHierarchy hierarchy, List<QualifierHierarchy> hierarchies) {
+        if (!hierarchyIndices.containsKey(hierarchy)) {
+            hierarchyIndices.put(hierarchy, hierarchies.size());
+            hierarchies.add(hierarchy);
+        }
+    }
+
+    private void writeSlotHeader(SlotKind kind, Slot slot) {
+        writeVarInt(kind.ordinal());
+        writeVarInt(hierarchyIndices.get(slot.getOwner()));
+    }
+
+    private void writeConstraints(Collection<Constraint> constraints) {
+        writeVarInt(constraints.size());
+        for (Constraint constraint : constraints) {
+            writeConstraint(constraint);
+        }
+    }
+
+    private void writeConstraint(Constraint constraint) {
+        if (constraint instanceof AlwaysFalseConstraint) {
+            writeVarInt(ConstraintKind.ALWAYS_FALSE.ordinal());
+        } else {
+            constraint.serialize(this);
+        }
+    }
+
+    private void writeQualifier(QualifierHierarchy owner, Qualifier qualifier) {
+        if (qualifier.equals(owner.getTopQualifier())) {
+            writeVarInt(QualifierKind.TOP.ordinal());
+        } else if (qualifier.equals(owner.getBottomQualifier())) {
+            writeVarInt(QualifierKind.BOTTOM.ordinal());
+        } else if (qualifier instanceof Enum<?> enumQualifier) {
+            writeVarInt(QualifierKind.ENUM.ordinal());
+            writeString(enumQualifier.getDeclaringClass().getName());
+            writeString(enumQualifier.name());
+        } else {
+            throw new PluginError("Cannot serialize qualifier %s of %s", qualifier, owner.getClass().getSimpleName());
+        }
+    }
+
+    private void writeSlotRef(Slot slot) {
+        writeVarInt(slot.getId());
+    }
+
+    private void writeVarInt(int value) {
+        try {
+            while ((value & ~0x7F) != 0) {
+                out.write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write(value);
+        } catch (IOException e) {
+            throw new PluginError(e);
+        }
+    }
+
+    private void writeInt(int value) {
+        try {
+            out.write(value >>> 24);
+            out.write(value >>> 16);
+            out.write(value >>> 8);
+            out.write(value);
+        } catch (IOException e) {
+            throw new PluginError(e);
+        }
+    }
+
+    private void writeString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        try {
+            out.write(bytes);
+        } catch (IOException e) {
+            throw new PluginError(e);
+        }
+    }
+
+    @Override
+    public Void serialize(SourceSlot slot) {
+        writeSlotHeader(SlotKind.SOURCE, slot);
+        ConstantSlot defaultQualifier = slot.getDefaultQualifier();
+        // 0 for no default qualifier, otherwise its id + 1
+        writeVarInt(defaultQualifier == null ? 0 : defaultQualifier.getId() + 1);
+        return null;
+    }
+
+    @Override
+    public Void serialize(ConstantSlot slot) {
+        writeSlotHeader(SlotKind.CONSTANT, slot);
+        writeQualifier(slot.getOwner(), slot.getValue());
+        return null;
+    }
+
+    @Override
+    public Void serialize(ExistentialSlot slot) {
+        writeSlotHeader(SlotKind.EXISTENTIAL, slot);
+        writeSlotRef(slot.getPotentialSlot());
+        writeSlotRef(slot.getAlternativeSlot());
+        return null;
+    }
+
+    @Override
+    public Void serialize(RefinementSlot slot) {
+        writeSlotHeader(SlotKind.REFINEMENT, slot);
+        writeSlotRef(slot.getRefinedSlot());
+        return null;
+    }
+
+    @Override
+    public Void serialize(ViewpointAdaptationSlot slot) {
+        writeSlotHeader(SlotKind.VIEWPOINT_ADAPTATION, slot);
+        writeSlotRef(slot.getReceiverSlot());
+        writeSlotRef(slot.getDeclarationSlot());
+        return null;
+    }
+
+    @Override
+    public Void serialize(MergeSlot slot) {
+        writeSlotHeader(SlotKind.MERGE, slot);
+        writeSlotRef(slot.getLeftSlot());
+        writeSlotRef(slot.getRightSlot());
+        writeVarInt(slot.isLub() ? 1 : 0);
+        return null;
+    }
+
+    @Override
+    public Void serialize(ComparisonSlot slot) {
+        writeSlotHeader(SlotKind.COMPARISON, slot);
+        return null;
+    }
+
+    @Override
+    public Void serialize(ArithmeticSlot slot) {
+        writeSlotHeader(SlotKind.ARITHMETIC, slot);
+        return null;
+    }
+
+    @Override
+    public Void serialize(PolymorphicInstanceSlot slot) {
+        writeSlotHeader(SlotKind.POLYMORPHIC_INSTANCE, slot);
+        return null;
+    }
+
+    @Override
+    public Void serialize(SubtypeConstraint constraint) {
+        writeVarInt(ConstraintKind.SUBTYPE.ordinal());
+        writeSlotRef(constraint.getSubtype());
+        writeSlotRef(constraint.getSupertype());
+        return null;
+    }
+
+    @Override
+    public Void serialize(EqualityConstraint constraint) {
+        writeVarInt(ConstraintKind.EQUALITY.ordinal());
+        writeSlotRef(constraint.getFirst());
+        writeSlotRef(constraint.getSecond());
+        return null;
+    }
+
+    @Override
+    public Void serialize(ExistentialConstraint constraint) {
+        writeVarInt(ConstraintKind.EXISTENTIAL.ordinal());
+        writeSlotRef(constraint.getPotentialVariable());
+        writeConstraints(constraint.getPotentialConstraints());
+        writeConstraints(constraint.getAlternateConstraints());
+        return null;
+    }
+
+    @Override
+    public Void serialize(InequalityConstraint constraint) {
+        writeVarInt(ConstraintKind.INEQUALITY.ordinal());
+        writeSlotRef(constraint.getFirst());
+        writeSlotRef(constraint.getSecond());
+        return null;
+    }
+
+    @Override
+    public Void serialize(ComparableConstraint constraint) {
+        writeVarInt(ConstraintKind.COMPARABLE.ordinal());
+        writeSlotRef(constraint.getFirst());
+        writeSlotRef(constraint.getSecond());
+        return null;
+    }
+
+    @Override
+    public Void serialize(ComparisonConstraint constraint) {
+        writeVarInt(ConstraintKind.COMPARISON.ordinal());
+        writeVarInt(constraint.getOperation().ordinal());
+        writeSlotRef(constraint.getLeft());
+        writeSlotRef(constraint.getRight());
+        writeSlotRef(constraint.getResult());
+        return null;
+    }
+
+    @Override
+    public Void serialize(ViewpointAdaptationConstraint constraint) {
+        writeVarInt(ConstraintKind.VIEWPOINT_ADAPTATION.ordinal());
+        writeSlotRef(constraint.getResult());
+        return null;
+    }
+
+    @Override
+    public Void serialize(PreferenceConstraint constraint) {
+        writeVarInt(ConstraintKind.PREFERENCE.ordinal());
+        writeSlotRef(constraint.getVariable());
+        writeSlotRef(constraint.getGoal());
+        writeVarInt(constraint.getWeight());
+        return null;
+    }
+
+    @Override
+    public Void serialize(ImplicationConstraint constraint) {
+        writeVarInt(ConstraintKind.IMPLICATION.ordinal());
+        writeConstraints(constraint.getAssumptions());
+        writeConstraint(constraint.getConclusion());
+        return null;
+    }
+
+    @Override
+    public Void serialize(ArithmeticConstraint constraint) {
+        writeVarInt(ConstraintKind.ARITHMETIC.ordinal());
+        writeVarInt(constraint.getOperation().ordinal());
+        writeSlotRef(constraint.getLeft());
+        writeSlotRef(constraint.getRight());
+        writeSlotRef(constraint.getResult());
+        return null;
+    }
+}
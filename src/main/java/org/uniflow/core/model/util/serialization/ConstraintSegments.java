@@ -0,0 +1,196 @@
+package org.uniflow.core.model.util.serialization;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.sun.tools.javac.util.Context;
+import org.uniflow.core.PluginOptions;
+import org.uniflow.core.model.constraint.Constraint;
+import org.uniflow.core.model.constraint.ConstraintManager;
+import org.uniflow.core.model.reporting.PluginError;
+import org.uniflow.core.typesystem.QualifierHierarchy;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * Keeps the constraints spilled by {@link ConstraintManager} in a segment file for each qualifier hierarchy
+ * under {@link PluginOptions#getSpillDir()}, until the segment of each hierarchy is read back to be solved.
+ * <p>
+ * The constraints are appended in the format {@link BinarySerializer} writes the constraints of a hierarchy
+ * in, without their count, so a segment is copied to the constraints output as is. Constraints only refer to
+ * slots by id, so they can be written before the slots. The ids of the unsat messages of each constraint are
+ * appended to a second file of the segment, as a count followed by the ids.
+ */
+public final class ConstraintSegments {
+
+    private static final class Segment {
+        final Path file;
+        final OutputStream out;
+        final Path messagesFile;
+        final DataOutputStream messagesOut;
+        int count;
+
+        Segment(Path file, OutputStream out, Path messagesFile, DataOutputStream messagesOut) {
+            this.file = file;
+            this.out = out;
+            this.messagesFile = messagesFile;
+            this.messagesOut = messagesOut;
+        }
+    }
+
+    private final Context context;
+
+    private final @Nullable Path directory;
+
+    private final Map<QualifierHierarchy, Segment> segments;
+
+    private ConstraintSegments(Context context) {
+        this.context = context;
+        PluginOptions options = PluginOptions.instance(context);
+        this.directory = options.getSpillDir() != null ? Paths.get(options.getSpillDir()) : null;
+        this.segments = new LinkedHashMap<>();
+
+        context.put(ConstraintSegments.class, this);
+    }
+
+    public static ConstraintSegments instance(Context context) {
+        ConstraintSegments instance = context.get(ConstraintSegments.class);
+        if (instance == null) {
+            instance = new ConstraintSegments(context);
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * @param unsatMessages the ids of the unsat messages of the constraint at each position of
+     *                      {@code constraints}
+     */
+    public void append(QualifierHierarchy owner,
+                       Collection<Constraint> constraints,
+                       IntFunction<int[]> unsatMessages) {
+        Preconditions.checkState(directory != null, "Spilling constraints is disabled");
+        if (constraints.isEmpty()) {
+            return;
+        }
+
+        Segment segment = segments.get(owner);
+        if (segment == null) {
+            try {
+                Files.createDirectories(directory);
+                Path file = Files.createTempFile(directory, "constraints-", ".seg");
+                file.toFile().deleteOnExit();
+                Path messagesFile = Files.createTempFile(directory, "messages-", ".seg");
+                messagesFile.toFile().deleteOnExit();
+                segment = new Segment(file,
+                        new BufferedOutputStream(Files.newOutputStream(file)),
+                        messagesFile,
+                        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(messagesFile))));
+            } catch (IOException e) {
+                throw new PluginError(e);
+            }
+            segments.put(owner, segment);
+        }
+        BinarySerializer.appendConstraints(segment.out, constraints);
+        try {
+            for (int i = 0; i < constraints.size(); ++i) {
+                int[] ids = unsatMessages.apply(i);
+                segment.messagesOut.writeInt(ids.length);
+                for (int id : ids) {
+                    segment.messagesOut.writeInt(id);
+                }
+            }
+        } catch (IOException e) {
+            throw new PluginError(e);
+        }
+        segment.count += constraints.size();
+    }
+
+    /**
+     * Adds the spilled constraints of {@code owner} back to the {@link ConstraintManager} with their unsat
+     * messages, and deletes the segment of {@code owner}. Constraints spilled more than once are only added
+     * once.
+     */
+    public void readBack(QualifierHierarchy owner) {
+        Segment segment = segments.remove(owner);
+        if (segment == null) {
+            return;
+        }
+
+        ConstraintManager constraintManager = ConstraintManager.instance(context);
+        ByteBuffer constraints;
+        ByteBuffer messages;
+        try {
+            segment.out.flush();
+            segment.messagesOut.flush();
+            constraints = map(segment.file);
+            messages = map(segment.messagesFile);
+        } catch (IOException e) {
+            throw new PluginError(e);
+        }
+
+        BinaryDeserializer.readConstraints(context, constraints, segment.count, read -> {
+            int count = messages.getInt();
+            if (count == 0) {
+                for (Constraint constraint : read) {
+                    constraintManager.addUnexplainedConstraint(owner, constraint);
+                }
+            }
+            for (int i = 0; i < count; ++i) {
+                constraintManager.addExplainedConstraints(owner, ImmutableSet.copyOf(read), messages.getInt());
+            }
+        });
+        delete(segment);
+    }
+
+    private static ByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    Set<QualifierHierarchy> getOwners() {
+        return segments.keySet();
+    }
+
+    int getCount(QualifierHierarchy owner) {
+        Segment segment = segments.get(owner);
+        return segment != null ? segment.count : 0;
+    }
+
+    void copyTo(QualifierHierarchy owner, OutputStream out) throws IOException {
+        Segment segment = segments.get(owner);
+        if (segment != null) {
+            segment.out.flush();
+            Files.copy(segment.file, out);
+        }
+    }
+
+    private static void delete(Segment segment) {
+        try {
+            segment.out.close();
+            segment.messagesOut.close();
+            Files.deleteIfExists(segment.file);
+            Files.deleteIfExists(segment.messagesFile);
+        } catch (IOException e) {
+            throw new PluginError(e);
+        }
+    }
+}
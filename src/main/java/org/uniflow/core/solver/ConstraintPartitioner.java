@@ -0,0 +1,100 @@
+package org.uniflow.core.solver;
+
+import org.uniflow.core.model.constraint.Constraint;
+import org.uniflow.core.model.slot.ConstantSlot;
+import org.uniflow.core.model.slot.Slot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Partitions constraints into connected components, where two constraints are connected if they share a
+ * variable slot. {@link ConstantSlot}s have fixed values, so they don't connect constraints.
+ * <p>
+ * Components share no variables, so each of them can be solved on its own and the solutions can be combined.
+ */
+public final class ConstraintPartitioner {
+
+    private ConstraintPartitioner() {}
+
+    /**
+     * @param constraints the constraints to partition
+     * @param numSlots an exclusive upper bound of the slot ids in {@code constraints}
+     * @return the components, ordered by their first constraint in {@code constraints}. Each component keeps
+     * the relative order of its constraints. Constraints without variable slots form one extra component.
+     */
+    public static List<List<Constraint>> partition(Collection<Constraint> constraints, int numSlots) {
+        int[] parent = new int[numSlots];
+        for (int i = 0; i < numSlots; ++i) {
+            parent[i] = i;
+        }
+
+        // the first variable slot of each constraint, or -1 if it has none
+        int[] firstVars = new int[constraints.size()];
+        int index = 0;
+        for (Constraint c : constraints) {
+            int firstVar = -1;
+            for (Slot slot : c.getSlots()) {
+                if (slot instanceof ConstantSlot) {
+                    continue;
+                }
+                if (firstVar < 0) {
+                    firstVar = slot.getId();
+                } else {
+                    union(parent, firstVar, slot.getId());
+                }
+            }
+            firstVars[index++] = firstVar;
+        }
+
+        int[] rootToComponent = new int[numSlots];
+        Arrays.fill(rootToComponent, -1);
+        List<List<Constraint>> components = new ArrayList<>();
+        List<Constraint> constantComponent = null;
+
+        index = 0;
+        for (Constraint c : constraints) {
+            int firstVar = firstVars[index++];
+            if (firstVar < 0) {
+                if (constantComponent == null) {
+                    constantComponent = new ArrayList<>();
+                    components.add(constantComponent);
+                }
+                constantComponent.add(c);
+                continue;
+            }
+
+            int root = find(parent, firstVar);
+            if (rootToComponent[root] < 0) {
+                rootToComponent[root] = components.size();
+                components.add(new ArrayList<>());
+            }
+            components.get(rootToComponent[root]).add(c);
+        }
+        return components;
+    }
+
+    private static int find(int[] parent, int x) {
+        while (parent[x] != x) {
+            // path halving
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    private static void union(int[] parent, int x, int y) {
+        int rootX = find(parent, x);
+        int rootY = find(parent, y);
+        if (rootX != rootY) {
+            // keep the smaller id as root so the result doesn't depend on the order of unions
+            if (rootX < rootY) {
+                parent[rootY] = rootX;
+            } else {
+                parent[rootX] = rootY;
+            }
+        }
+    }
+}
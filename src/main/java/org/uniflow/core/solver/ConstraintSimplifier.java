@@ -0,0 +1,376 @@
+package org.uniflow.core.solver;
+
+import com.sun.tools.javac.util.Context;
+import org.uniflow.core.model.constraint.AlwaysTrueConstraint;
+import org.uniflow.core.model.constraint.Constraint;
+import org.uniflow.core.model.constraint.ConstraintManager;
+import org.uniflow.core.model.constraint.EqualityConstraint;
+import org.uniflow.core.model.constraint.SubtypeConstraint;
+import org.uniflow.core.model.qualifier.Qualifier;
+import org.uniflow.core.model.slot.ConstantSlot;
+import org.uniflow.core.model.slot.Slot;
+import org.uniflow.core.model.slot.SlotManager;
+import org.uniflow.core.typesystem.QualifierHierarchy;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Simplifies a set of constraints of a qualifier hierarchy with only 2 qualifiers (Top/Bottom) before they are
+ * serialized:
+ * <ul>
+ *     <li>variables that are equal, directly or through a cycle of subtype constraints, are collapsed into
+ *     one representative variable;</li>
+ *     <li>constants are propagated: a variable equal to a constant is fixed, a supertype of top is top and a
+ *     subtype of bottom is bottom;</li>
+ *     <li>subtype constraints that are subsumed, i.e. within one class, duplicated, or satisfied by the fixed
+ *     variables, are removed.</li>
+ * </ul>
+ * Only {@link SubtypeConstraint}s and {@link EqualityConstraint}s are rewritten. Other constraints are kept as
+ * they are, and their variables are tied to the representatives with equality constraints.
+ * <p>
+ * A solution of the simplified constraints is expanded to the eliminated variables with {@link #expand(Map)}.
+ * A new simplifier should be used for each set of constraints.
+ */
+public final class ConstraintSimplifier {
+
+    private final SlotManager slotManager;
+    private final ConstraintManager constraintManager;
+    private final Qualifier top;
+    private final Qualifier bottom;
+
+    // union-find over slot ids, the smallest id of a class is its root
+    private int[] parent = new int[0];
+
+    // the fixed qualifier of each root, if any
+    private final Map<Integer, Qualifier> fixedValues = new HashMap<>();
+
+    // the constant slots in the original constraints, used to fix variables in the kept constraints
+    private final Map<Qualifier, ConstantSlot> constantSlots = new HashMap<>();
+
+    // variable slots that occur in the original constraints but not in the simplified constraints
+    private final BitSet eliminatedSlots = new BitSet();
+
+    private final List<Constraint> simplifiedConstraints = new ArrayList<>();
+
+    public ConstraintSimplifier(Context context, QualifierHierarchy qualifierHierarchy) {
+        this.slotManager = SlotManager.instance(context);
+        this.constraintManager = ConstraintManager.instance(context);
+        this.top = qualifierHierarchy.getTopQualifier();
+        this.bottom = qualifierHierarchy.getBottomQualifier();
+    }
+
+    /**
+     * @return false if the constraints are found to be unsatisfiable, true otherwise
+     */
+    public boolean simplify(Collection<Constraint> constraints) {
+        int numSlots = slotManager.getSlots().size();
+        parent = new int[numSlots];
+        for (int i = 0; i < numSlots; ++i) {
+            parent[i] = i;
+        }
+
+        BitSet constrainedSlots = new BitSet(numSlots);
+        List<SubtypeConstraint> subtypeConstraints = new ArrayList<>();
+        List<Constraint> otherConstraints = new ArrayList<>();
+
+        // Step 1: collapse equality classes, and fix the variables that are equal to constants
+        for (Constraint c : constraints) {
+            for (Slot slot : c.getSlots()) {
+                if (slot instanceof ConstantSlot constantSlot) {
+                    constantSlots.putIfAbsent(constantSlot.getValue(), constantSlot);
+                } else {
+                    constrainedSlots.set(slot.getId());
+                }
+            }
+
+            if (c instanceof EqualityConstraint equality) {
+                if (!addEquality(equality.getFirst(), equality.getSecond())) {
+                    return false;
+                }
+            } else if (c instanceof SubtypeConstraint subtype) {
+                subtypeConstraints.add(subtype);
+            } else {
+                otherConstraints.add(c);
+            }
+        }
+
+        // Step 2: collect the subtype edges between variables, and fix the variables compared with constants
+        List<int[]> edges = new ArrayList<>();
+        for (SubtypeConstraint c : subtypeConstraints) {
+            Slot subtype = c.getSubtype();
+            Slot supertype = c.getSupertype();
+            if (subtype instanceof ConstantSlot constantSubtype) {
+                // only top has top as subtype
+                if (constantSubtype.getValue().equals(top) && !fix(supertype, top)) {
+                    return false;
+                }
+            } else if (supertype instanceof ConstantSlot constantSupertype) {
+                // only bottom has bottom as supertype
+                if (constantSupertype.getValue().equals(bottom) && !fix(subtype, bottom)) {
+                    return false;
+                }
+            } else {
+                edges.add(new int[] {subtype.getId(), supertype.getId()});
+            }
+        }
+
+        // Step 3: collapse cycles of subtype constraints, as all variables in a cycle are equal
+        if (!collapseCycles(edges, numSlots)) {
+            return false;
+        }
+
+        // Step 4: propagate the fixed values along the remaining edges
+        Map<Integer, List<Integer>> supertypes = new HashMap<>();
+        Map<Integer, List<Integer>> subtypes = new HashMap<>();
+        Set<Long> distinctEdges = new LinkedHashSet<>();
+        for (int[] edge : edges) {
+            int sub = find(edge[0]);
+            int sup = find(edge[1]);
+            if (sub != sup && distinctEdges.add(((long) sub << 32) | sup)) {
+                supertypes.computeIfAbsent(sub, k -> new ArrayList<>()).add(sup);
+                subtypes.computeIfAbsent(sup, k -> new ArrayList<>()).add(sub);
+            }
+        }
+        if (!propagate(supertypes, subtypes)) {
+            return false;
+        }
+
+        // Step 5: build the simplified constraints. An edge with a fixed end is satisfied after the propagation.
+        Set<Constraint> result = new LinkedHashSet<>();
+        for (long edge : distinctEdges) {
+            int sub = (int) (edge >>> 32);
+            int sup = (int) edge;
+            if (!fixedValues.containsKey(sub) && !fixedValues.containsKey(sup)) {
+                addConstraint(result, constraintManager.getForSubtype(getSlot(sub), getSlot(sup)));
+            }
+        }
+        for (Constraint c : otherConstraints) {
+            addConstraint(result, c);
+            for (Slot slot : c.getSlots()) {
+                if (slot instanceof ConstantSlot) {
+                    continue;
+                }
+                int root = find(slot.getId());
+                Qualifier fixed = fixedValues.get(root);
+                if (fixed != null) {
+                    ConstantSlot constantSlot = Objects.requireNonNull(constantSlots.get(fixed));
+                    addConstraint(result, constraintManager.getForEquality(slot, constantSlot));
+                } else if (root != slot.getId()) {
+                    addConstraint(result, constraintManager.getForEquality(slot, getSlot(root)));
+                }
+            }
+        }
+        simplifiedConstraints.addAll(result);
+
+        eliminatedSlots.or(constrainedSlots);
+        for (Constraint c : simplifiedConstraints) {
+            for (Slot slot : c.getSlots()) {
+                eliminatedSlots.clear(slot.getId());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the simplified constraints, only valid after a successful {@link #simplify(Collection)}
+     */
+    public List<Constraint> getConstraints() {
+        return Collections.unmodifiableList(simplifiedConstraints);
+    }
+
+    /**
+     * Adds the qualifiers of the eliminated variables to {@code solution}, which is a solution of the simplified
+     * constraints. Variables that are not fixed and whose representative has no qualifier in {@code solution}
+     * are unconstrained, and get top.
+     */
+    public void expand(Map<Integer, Qualifier> solution) {
+        for (int id = eliminatedSlots.nextSetBit(0); id >= 0; id = eliminatedSlots.nextSetBit(id + 1)) {
+            int root = find(id);
+            Qualifier value = fixedValues.get(root);
+            if (value == null) {
+                value = eliminatedSlots.get(root) ? null : solution.get(root);
+            }
+            solution.put(id, value != null ? value : top);
+        }
+    }
+
+    private static void addConstraint(Set<Constraint> result, Constraint c) {
+        if (!(c instanceof AlwaysTrueConstraint)) {
+            result.add(c);
+        }
+    }
+
+    private Slot getSlot(int id) {
+        return Objects.requireNonNull(slotManager.getSlot(id));
+    }
+
+    private boolean addEquality(Slot first, Slot second) {
+        if (first instanceof ConstantSlot firstConstant) {
+            if (second instanceof ConstantSlot secondConstant) {
+                return firstConstant.getValue().equals(secondConstant.getValue());
+            }
+            return fix(second, firstConstant.getValue());
+        }
+        if (second instanceof ConstantSlot secondConstant) {
+            return fix(first, secondConstant.getValue());
+        }
+        return union(first.getId(), second.getId());
+    }
+
+    private boolean fix(Slot slot, Qualifier value) {
+        return fixRoot(find(slot.getId()), value);
+    }
+
+    /**
+     * @return false if {@code root} is already fixed to another qualifier
+     */
+    private boolean fixRoot(int root, Qualifier value) {
+        Qualifier previous = fixedValues.putIfAbsent(root, value);
+        return previous == null || previous.equals(value);
+    }
+
+    private int find(int x) {
+        while (parent[x] != x) {
+            // path halving
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    /**
+     * @return false if the classes of {@code x} and {@code y} are fixed to different qualifiers
+     */
+    private boolean union(int x, int y) {
+        int rootX = find(x);
+        int rootY = find(y);
+        if (rootX == rootY) {
+            return true;
+        }
+        int root = Math.min(rootX, rootY);
+        int child = Math.max(rootX, rootY);
+        parent[child] = root;
+
+        Qualifier childValue = fixedValues.remove(child);
+        return childValue == null || fixRoot(root, childValue);
+    }
+
+    /**
+     * Merges the classes in each strongly connected component of the subtype graph, with an iterative version of
+     * Tarjan's algorithm.
+     *
+     * @return false if a component contains classes fixed to different qualifiers
+     */
+    private boolean collapseCycles(List<int[]> edges, int numSlots) {
+        Map<Integer, List<Integer>> successors = new HashMap<>();
+        for (int[] edge : edges) {
+            int sub = find(edge[0]);
+            int sup = find(edge[1]);
+            if (sub != sup) {
+                successors.computeIfAbsent(sub, k -> new ArrayList<>()).add(sup);
+            }
+        }
+
+        int[] index = new int[numSlots];
+        int[] lowLink = new int[numSlots];
+        Arrays.fill(index, -1);
+        BitSet onStack = new BitSet(numSlots);
+        Deque<Integer> stack = new ArrayDeque<>();
+        // each frame is {node, position of the next successor}
+        Deque<int[]> callStack = new ArrayDeque<>();
+        int nextIndex = 0;
+        List<int[]> unions = new ArrayList<>();
+
+        for (int start : successors.keySet()) {
+            if (index[start] >= 0) {
+                continue;
+            }
+            callStack.push(new int[] {start, 0});
+            index[start] = lowLink[start] = nextIndex++;
+            stack.push(start);
+            onStack.set(start);
+
+            while (!callStack.isEmpty()) {
+                int[] frame = callStack.peek();
+                int node = frame[0];
+                List<Integer> nodeSuccessors = successors.getOrDefault(node, List.of());
+                if (frame[1] < nodeSuccessors.size()) {
+                    int successor = nodeSuccessors.get(frame[1]++);
+                    if (index[successor] < 0) {
+                        callStack.push(new int[] {successor, 0});
+                        index[successor] = lowLink[successor] = nextIndex++;
+                        stack.push(successor);
+                        onStack.set(successor);
+                    } else if (onStack.get(successor)) {
+                        lowLink[node] = Math.min(lowLink[node], index[successor]);
+                    }
+                    continue;
+                }
+
+                callStack.pop();
+                if (!callStack.isEmpty()) {
+                    int caller = callStack.peek()[0];
+                    lowLink[caller] = Math.min(lowLink[caller], lowLink[node]);
+                }
+                if (lowLink[node] == index[node]) {
+                    int member;
+                    do {
+                        member = stack.pop();
+                        onStack.clear(member);
+                        if (member != node) {
+                            unions.add(new int[] {node, member});
+                        }
+                    } while (member != node);
+                }
+            }
+        }
+
+        for (int[] pair : unions) {
+            if (!union(pair[0], pair[1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Propagates top to the supertypes and bottom to the subtypes of the fixed classes.
+     *
+     * @return false if a class would be fixed to both top and bottom
+     */
+    private boolean propagate(Map<Integer, List<Integer>> supertypes, Map<Integer, List<Integer>> subtypes) {
+        Deque<Integer> worklist = new ArrayDeque<>(fixedValues.keySet());
+        while (!worklist.isEmpty()) {
+            int root = worklist.pop();
+            Qualifier value = fixedValues.get(root);
+            @Nullable List<Integer> next = value.equals(top) ? supertypes.get(root)
+                    : value.equals(bottom) ? subtypes.get(root)
+                    : null;
+            if (next == null) {
+                continue;
+            }
+            for (int neighbor : next) {
+                Qualifier previous = fixedValues.putIfAbsent(neighbor, value);
+                if (previous == null) {
+                    worklist.push(neighbor);
+                } else if (!previous.equals(value)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
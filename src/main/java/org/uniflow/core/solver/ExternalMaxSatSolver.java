@@ -0,0 +1,230 @@
+package org.uniflow.core.solver;
+
+import com.google.common.base.Splitter;
+import com.sun.tools.javac.util.Context;
+import org.uniflow.core.model.constraint.AlwaysFalseConstraint;
+import org.uniflow.core.model.constraint.Constraint;
+import org.uniflow.core.model.qualifier.Qualifier;
+import org.uniflow.core.model.reporting.PluginError;
+import org.uniflow.core.model.slot.ConstantSlot;
+import org.uniflow.core.model.slot.Slot;
+import org.uniflow.core.model.slot.VariableSlot;
+import org.uniflow.core.solver.serializer.CnfVecIntSerializer;
+import org.uniflow.core.solver.serializer.WcnfWriter;
+import org.uniflow.core.typesystem.QualifierHierarchy;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Solves the constraints of a type system with only 2 types (Top/Bottom) with an external MaxSAT solver,
+ * e.g. one of the MaxSAT Evaluation solvers.
+ * <p>
+ * The constraints are streamed to a temporary WCNF file by {@link WcnfWriter} and the solver named by
+ * {@link #COMMAND} is run on it. The solver must print its result in the MaxSAT Evaluation output format: an
+ * {@code s} line with the status and {@code v} lines with the model, either as a string of 0s and 1s or as
+ * a list of literals.
+ */
+public class ExternalMaxSatSolver implements InferenceSolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExternalMaxSatSolver.class);
+
+    /**
+     * Configuration key for the command to run the solver, with arguments separated by whitespace. The path of
+     * the WCNF file is appended as the last argument.
+     */
+    public static final String COMMAND = "externalCommand";
+
+    @Override
+    public InferenceResult solve(Context context,
+                                 Map<String, String> configuration,
+                                 Collection<Slot> slots,
+                                 Collection<Constraint> constraints,
+                                 QualifierHierarchy qualifierHierarchy) {
+        AlwaysFalseConstraint alwaysFalseConstraint = AlwaysFalseConstraint.instance();
+        if (constraints.contains(alwaysFalseConstraint)) {
+            return new DefaultInferenceResult(Set.of(alwaysFalseConstraint));
+        }
+
+        String command = configuration.get(COMMAND);
+        if (command == null || command.isBlank()) {
+            throw new PluginError("No command configured for the external MaxSAT solver");
+        }
+        long timeoutSeconds = Long.parseLong(configuration.getOrDefault(MaxSat2TypeSolver.TIMEOUT, "1000"));
+
+        Qualifier top = qualifierHierarchy.getTopQualifier();
+        Qualifier bottom = qualifierHierarchy.getBottomQualifier();
+        CnfVecIntSerializer serializer = createSerializer(context, top);
+
+        @Nullable Path wcnfFile = null;
+        @Nullable Path outputFile = null;
+        try {
+            wcnfFile = Files.createTempFile("uniflow", ".wcnf");
+            outputFile = Files.createTempFile("uniflow", ".out");
+
+            // the variables of the written clauses, i.e. the slots the solver has to decide
+            BitSet usedVars = new BitSet();
+            try (WcnfWriter writer = new WcnfWriter(wcnfFile)) {
+                serializer.convertAll(constraints, (clause, weight) -> {
+                    for (int i = 0; i < clause.size(); ++i) {
+                        usedVars.set(Math.abs(clause.get(i)));
+                    }
+                    writer.add(clause, weight);
+                });
+                logger.debug("Wrote {} hard and {} soft clauses to {}",
+                        writer.getNumHardClauses(), writer.getNumSoftClauses(), wcnfFile);
+            }
+
+            BitSet model = runSolver(command, wcnfFile, outputFile, timeoutSeconds);
+            if (model == null) {
+                return new DefaultInferenceResult(UnsatCoreExtractor.extract(
+                        new ArrayList<>(constraints), createSerializer(context, top), null, timeoutSeconds * 1000));
+            }
+
+            // Decode in ascending order of the variables, so the potential variable of an existential
+            // variable is decoded before it.
+            Map<Integer, Integer> existentialToPotentialIds = serializer.getExistentialToPotentialVar();
+            Map<Integer, Qualifier> solutions = new HashMap<>();
+            for (int var = usedVars.nextSetBit(0); var >= 0; var = usedVars.nextSetBit(var + 1)) {
+                boolean isTrue = model.get(var + 1);
+                Integer potential = existentialToPotentialIds.get(var);
+                if (potential != null) {
+                    if (!isTrue) {
+                        // The existential variable is false, so the potential variable should not be inserted.
+                        solutions.remove(potential);
+                    }
+                } else {
+                    solutions.put(var, isTrue ? bottom : top);
+                }
+            }
+            // variables without any constraint can take any qualifier, see MaxSat2TypeSolver
+            for (Slot slot : slots) {
+                if (slot instanceof VariableSlot && !usedVars.get(slot.getId())) {
+                    solutions.put(slot.getId(), top);
+                }
+            }
+            return new DefaultInferenceResult(solutions);
+        } catch (IOException | UncheckedIOException e) {
+            throw new PluginError(e);
+        } finally {
+            deleteQuietly(wcnfFile);
+            deleteQuietly(outputFile);
+        }
+    }
+
+    private static CnfVecIntSerializer createSerializer(Context context, Qualifier top) {
+        return new CnfVecIntSerializer(context) {
+            @Override
+            protected boolean isTop(ConstantSlot constantSlot) {
+                return constantSlot.getValue().equals(top);
+            }
+        };
+    }
+
+    /**
+     * @return the true WCNF variables of the model, or null if the clauses are unsatisfiable
+     */
+    private static @Nullable BitSet runSolver(String command, Path wcnfFile, Path outputFile, long timeoutSeconds)
+            throws IOException {
+        List<String> arguments = new ArrayList<>(Splitter.onPattern("\\s+").omitEmptyStrings().splitToList(command));
+        arguments.add(wcnfFile.toString());
+
+        // The output goes to a file rather than a pipe, so a solver printing a big model can't block on a
+        // full pipe while we wait for it. Diagnostics go to our stderr, so they can't be parsed as the model.
+        Process process = new ProcessBuilder(arguments)
+                .redirectOutput(outputFile.toFile())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try {
+            if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                throw new RuntimeException("MAX-SAT solving timeout! ");
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
+            throw new PluginError(e);
+        }
+
+        String status = null;
+        List<String> values = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(outputFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("s ")) {
+                    status = line.substring(2).trim();
+                } else if (line.startsWith("v ")) {
+                    values.addAll(Splitter.onPattern("\\s+").omitEmptyStrings().splitToList(line.substring(2)));
+                }
+            }
+        }
+
+        if (status == null) {
+            throw new PluginError("External MaxSAT solver \"%s\" exited with %d without printing a result",
+                    String.join(" ", arguments), process.exitValue());
+        }
+        return switch (status) {
+            case "OPTIMUM FOUND", "SATISFIABLE" -> parseModel(values);
+            case "UNSATISFIABLE" -> null;
+            default -> throw new PluginError("External MaxSAT solver returned %s", status);
+        };
+    }
+
+    /**
+     * Parses the values of all {@code v} lines. Solvers print the model either as a single string of 0s and 1s,
+     * where the i-th character is variable i + 1, or as the signed literals of all variables, possibly over
+     * several lines and terminated by 0. A model of literals has more than one value unless it has a single
+     * variable, whose literal means the same as its bit, so a single unsigned value is a string of bits.
+     */
+    private static BitSet parseModel(List<String> values) {
+        BitSet model = new BitSet();
+        if (values.size() == 1 && values.get(0).chars().allMatch(c -> c == '0' || c == '1')) {
+            String bits = values.get(0);
+            for (int i = 0; i < bits.length(); ++i) {
+                if (bits.charAt(i) == '1') {
+                    model.set(i + 1);
+                }
+            }
+            return model;
+        }
+
+        for (String value : values) {
+            int lit;
+            try {
+                lit = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new PluginError("External MaxSAT solver printed the malformed model value \"%s\"", value);
+            }
+            if (lit > 0) {
+                model.set(lit);
+            }
+        }
+        return model;
+    }
+
+    private static void deleteQuietly(@Nullable Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.warn("Cannot delete temporary file {}", file);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.uniflow.core.solver;
+
+import com.sun.tools.javac.util.Context;
+import org.uniflow.core.model.constraint.AlwaysFalseConstraint;
+import org.uniflow.core.model.constraint.Constraint;
+import org.uniflow.core.model.qualifier.Qualifier;
+import org.uniflow.core.model.slot.Slot;
+import org.uniflow.core.model.slot.VariableSlot;
+import org.uniflow.core.solver.serializer.ClauseBuffer;
+import org.uniflow.core.solver.serializer.LatticeVecIntSerializer;
+import org.uniflow.core.typesystem.QualifierHierarchy;
+import org.sat4j.core.VecInt;
+import org.sat4j.pb.IPBSolver;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Solves the constraints of a hierarchy with any number of qualifiers, by encoding each slot with
+ * {@link LatticeVecIntSerializer} and solving the resulting SAT problem with SAT4J.
+ * <p>
+ * Accepts the {@link MaxSat2TypeSolver#PORTFOLIO} and {@link MaxSat2TypeSolver#TIMEOUT} configuration keys.
+ */
+public class LatticeSolver implements InferenceSolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(LatticeSolver.class);
+
+    @Override
+    public InferenceResult solve(Context context,
+                                 Map<String, String> configuration,
+                                 Collection<Slot> slots,
+                                 Collection<Constraint> constraints,
+                                 QualifierHierarchy qualifierHierarchy) {
+        AlwaysFalseConstraint alwaysFalseConstraint = AlwaysFalseConstraint.instance();
+        if (constraints.contains(alwaysFalseConstraint)) {
+            return new DefaultInferenceResult(Set.of(alwaysFalseConstraint));
+        }
+
+        SolverPortfolio portfolio = SolverPortfolio.valueOf(
+                configuration.getOrDefault(MaxSat2TypeSolver.PORTFOLIO, SolverPortfolio.AUTO.name()));
+        long timeoutSeconds = Long.parseLong(configuration.getOrDefault(MaxSat2TypeSolver.TIMEOUT, "1000"));
+
+        LatticeVecIntSerializer serializer = new LatticeVecIntSerializer(context, qualifierHierarchy);
+        ClauseBuffer clauses = new ClauseBuffer(constraints.size());
+        serializer.convertAll(constraints, clauses);
+        logger.debug("Encoded {} constraints of {} as {} clauses with the {} encoding",
+                constraints.size(), qualifierHierarchy.getClass().getSimpleName(), clauses.size(),
+                serializer.getEncoding());
+
+        // number the variables densely, as most slots don't belong to this hierarchy
+        int[] vars = clauses.getVariables();
+        clauses.renumber(vars);
+
+        IPBSolver solver = portfolio.createSolver(clauses.size());
+        solver.newVar(vars.length);
+        solver.setExpectedNumberOfClauses(clauses.size());
+        solver.setTimeout((int) Math.min(timeoutSeconds, Integer.MAX_VALUE));
+
+        boolean isSatisfiable;
+        try {
+            VecInt clause = new VecInt();
+            for (int i = 0; i < clauses.size(); ++i) {
+                solver.addClause(clauses.getClause(i, clause));
+            }
+            isSatisfiable = solver.isSatisfiable();
+        } catch (ContradictionException e) {
+            isSatisfiable = false;
+        } catch (TimeoutException e) {
+            throw new RuntimeException("SAT solving timeout! ");
+        }
+        if (!isSatisfiable) {
+            LatticeVecIntSerializer explainer = new LatticeVecIntSerializer(context, qualifierHierarchy);
+            return new DefaultInferenceResult(UnsatCoreExtractor.extract(
+                    new ArrayList<>(constraints), explainer, explainer::addAxioms, timeoutSeconds * 1000));
+        }
+
+        BitSet trueVars = new BitSet();
+        for (int lit : solver.model()) {
+            if (lit > 0) {
+                trueVars.set(vars[lit - 1]);
+            }
+        }
+
+        Map<Integer, Qualifier> solutions = new HashMap<>();
+        BitSet encodedSlots = serializer.getEncodedSlots();
+        for (int slot = encodedSlots.nextSetBit(0); slot >= 0; slot = encodedSlots.nextSetBit(slot + 1)) {
+            solutions.put(slot, serializer.decode(slot, trueVars::get));
+        }
+        for (Map.Entry<Integer, Integer> entry : serializer.getExistentialToPotentialVar().entrySet()) {
+            // the potential slot doesn't exist, so it should not be inserted
+            if (Arrays.binarySearch(vars, entry.getKey()) >= 0 && !trueVars.get(entry.getKey())) {
+                solutions.remove(entry.getValue());
+            }
+        }
+        // variables without any constraint can take any qualifier, see MaxSat2TypeSolver
+        Qualifier top = qualifierHierarchy.getTopQualifier();
+        for (Slot slot : slots) {
+            if (slot instanceof VariableSlot && !encodedSlots.get(slot.getId())) {
+                solutions.put(slot.getId(), top);
+            }
+        }
+        return new DefaultInferenceResult(solutions);
+    }
+}
@@ -1,43 +1,97 @@
 package org.uniflow.core.solver;
 
+import com.google.common.hash.HashCode;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.sun.tools.javac.util.Context;
 import org.uniflow.core.model.constraint.AlwaysFalseConstraint;
 import org.uniflow.core.model.constraint.Constraint;
 import org.uniflow.core.model.qualifier.Qualifier;
+import org.uniflow.core.model.reporting.PluginError;
 import org.uniflow.core.model.slot.ConstantSlot;
 import org.uniflow.core.model.slot.Slot;
 import org.uniflow.core.model.slot.SlotManager;
+import org.uniflow.core.model.slot.VariableSlot;
+import org.uniflow.core.solver.serializer.ClauseBuffer;
 import org.uniflow.core.solver.serializer.CnfVecIntSerializer;
 import org.uniflow.core.typesystem.QualifierHierarchy;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.sat4j.core.VecInt;
 import org.sat4j.maxsat.WeightedMaxSatDecorator;
+import org.sat4j.pb.IPBSolver;
+import org.sat4j.pb.OptToPBSATAdapter;
+import org.sat4j.pb.PseudoOptDecorator;
 import org.sat4j.specs.ContradictionException;
 import org.sat4j.specs.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * This solver is used to convert any constraint set using a type system with only 2 types (Top/Bottom),
  * into a SAT problem.  This SAT problem is then solved by SAT4J and the output is converted back
  * into an InferenceResult.
+ * <p>
+ * The constraints are first partitioned into components that share no variables (see
+ * {@link ConstraintPartitioner}), and each component is solved as its own, smaller MAX-SAT problem.
  */
 public class MaxSat2TypeSolver implements InferenceSolver {
 
-    // private QualifierHierarchy qualHierarchy;
+    private static final Logger logger = LoggerFactory.getLogger(MaxSat2TypeSolver.class);
+
+    /**
+     * Configuration key for the number of threads used to solve independent components (default: 1).
+     */
+    public static final String COMPONENT_THREADS = "componentThreads";
+
+    /**
+     * Configuration key for whether to simplify the constraints with {@link ConstraintSimplifier} before
+     * serializing them (default: true).
+     */
+    public static final String SIMPLIFY = "simplify";
+
+    /**
+     * Configuration key for the {@link SolverPortfolio} to run on each component (default: AUTO).
+     */
+    public static final String PORTFOLIO = "portfolio";
+
+    /**
+     * Configuration key for the timeout in seconds for solving all components (default: 1000).
+     */
+    public static final String TIMEOUT = "timeout";
+
+    /**
+     * Configuration key for whether to use the best model found so far when the solver times out, instead of
+     * failing (default: false). The model satisfies all hard clauses, but may not be optimal for the soft ones.
+     */
+    public static final String BEST_MODEL_ON_TIMEOUT = "bestModelOnTimeout";
+
+    private QualifierHierarchy qualifierHierarchy;
     private Collection<Constraint> constraints;
-    // private Collection<Slot> slots;
+    private Collection<Slot> slots;
 
     // private Qualifier defaultValue;
     private Qualifier top;
     private Qualifier bottom;
-    private CnfVecIntSerializer serializer;
+    private Context context;
     private SlotManager slotManager;
+    private int componentThreads;
+    private boolean simplify;
+    private SolverPortfolio portfolio;
+    private boolean bestModelOnTimeout;
+    private long deadlineMillis;
+    private SolutionCache solutionCache;
 
     @Override
     public InferenceResult solve(Context context,
@@ -51,117 +105,277 @@ public class MaxSat2TypeSolver implements InferenceSolver {
             return new DefaultInferenceResult(Set.of(alwaysFalseConstraint));
         }
 
-        // this.slots = slots;
+        this.slots = slots;
         this.constraints = constraints;
-        // this.qualHierarchy = qualHierarchy;
+        this.qualifierHierarchy = qualifierHierarchy;
 
         this.top = qualifierHierarchy.getTopQualifier();
         this.bottom = qualifierHierarchy.getBottomQualifier();
+        this.context = context;
         this.slotManager = SlotManager.instance(context);
-        this.serializer = new CnfVecIntSerializer(context) {
+        this.solutionCache = SolutionCache.instance(context);
+        this.componentThreads = Integer.parseInt(configuration.getOrDefault(COMPONENT_THREADS, "1"));
+        this.simplify = Boolean.parseBoolean(configuration.getOrDefault(SIMPLIFY, "true"));
+        this.portfolio = SolverPortfolio.valueOf(configuration.getOrDefault(PORTFOLIO, SolverPortfolio.AUTO.name()));
+        this.bestModelOnTimeout = Boolean.parseBoolean(configuration.getOrDefault(BEST_MODEL_ON_TIMEOUT, "false"));
+        // arbitrary default timeout selected for no particular reason
+        long timeoutSeconds = Long.parseLong(configuration.getOrDefault(TIMEOUT, "1000"));
+        this.deadlineMillis = System.currentTimeMillis() + timeoutSeconds * 1000;
+        // TODO: This needs to be parameterized based on the type system
+        // this.defaultValue = top;
+
+        return solve();
+    }
+
+    private CnfVecIntSerializer createSerializer() {
+        return new CnfVecIntSerializer(context) {
             @Override
             protected boolean isTop(ConstantSlot constantSlot) {
                 return constantSlot.getValue().equals(top);
             }
         };
-        // TODO: This needs to be parameterized based on the type system
-        // this.defaultValue = top;
-
-        return solve();
     }
 
     private InferenceResult solve() {
+        Collection<Constraint> simplifiedConstraints = constraints;
+        ConstraintSimplifier simplifier = null;
+        if (simplify) {
+            simplifier = new ConstraintSimplifier(context, qualifierHierarchy);
+            if (!simplifier.simplify(constraints)) {
+                logger.info("Not solvable! Contradiction found when simplifying constraints.");
+                return new DefaultInferenceResult(explainUnsat());
+            }
+            simplifiedConstraints = simplifier.getConstraints();
+            logger.debug("Simplified {} constraints to {}", constraints.size(), simplifiedConstraints.size());
+        }
 
-        final List<VecInt> softClauses = new LinkedList<>();
-        final List<VecInt> hardClauses = new LinkedList<>();
-        serializer.convertAll(constraints, hardClauses, softClauses);
+        List<List<Constraint>> components =
+                ConstraintPartitioner.partition(simplifiedConstraints, slotManager.getSlots().size());
+        logger.debug("Solving {} constraints in {} independent components",
+                simplifiedConstraints.size(), components.size());
 
-        // nextId describes the LARGEST id that might be found in a variable
-        // if an exception occurs while creating a variable the id might be incremented
-        // but the slot might not actually be recorded.  Therefore, nextId is NOT
-        // the number of slots but the maximum you might encounter.
-        // TODO: this is a workaround as currently when serialize existential constraint we lost the real existential
-        // TODO: variable id and create "fake" id stored in existentialToPotentialVar map.
-        // TODO: thus here the value of totalVars is the real slots number stored in slotManager, and plus the
-        // TODO: "fake" slots number stored in existentialToPotentialVar
-        final int totalVars = slotManager.getSlots().size() + serializer.getExistentialToPotentialVar().size();
-        final int totalClauses = hardClauses.size() + softClauses.size();
+        final Map<Integer, Qualifier> decodedSolution = new HashMap<>();
+        for (InferenceResult componentResult : solveComponents(components)) {
+            if (!componentResult.hasSolution()) {
+                return new DefaultInferenceResult(explainUnsat());
+            }
+            decodedSolution.putAll(componentResult.getSolutions());
+        }
+        if (simplifier != null) {
+            simplifier.expand(decodedSolution);
+        }
 
+        // Variables that don't occur in any clause, e.g. because they have no constraints or only constraints
+        // without clauses, can take any qualifier. Use top, which is what SAT4J picks for them.
+        for (Slot slot : slots) {
+            if (slot instanceof VariableSlot) {
+                decodedSolution.putIfAbsent(slot.getId(), top);
+            }
+        }
 
-        // When .newBoth is called, SAT4J will run two solvers and return the result of the first to halt
-        final WeightedMaxSatDecorator solver = new WeightedMaxSatDecorator(org.sat4j.pb.SolverFactory.newBoth());
+        return new DefaultInferenceResult(decodedSolution);
+    }
 
-        solver.newVar(totalVars);
-        solver.setExpectedNumberOfClauses(totalClauses);
+    /**
+     * Finds a minimal subset of the original constraints that is unsatisfiable. The original constraints
+     * are used rather than the simplified ones, as only they have messages to report.
+     *
+     * @return the unsat core of the first unsatisfiable component, see {@link UnsatCoreExtractor}
+     */
+    private Set<Constraint> explainUnsat() {
+        for (List<Constraint> component : ConstraintPartitioner.partition(constraints, slotManager.getSlots().size())) {
+            long remainingMillis = deadlineMillis - System.currentTimeMillis();
+            Set<Constraint> core = UnsatCoreExtractor.extract(component, createSerializer(), null, remainingMillis);
+            if (!core.isEmpty()) {
+                logger.debug("Found an unsat core of {} constraints", core.size());
+                return core;
+            }
+        }
+        return Set.of();
+    }
 
-        // arbitrary timeout selected for no particular reason
-        solver.setTimeoutMs(1000000);
+    /**
+     * Solves each component, in parallel if {@link #COMPONENT_THREADS} is greater than 1.
+     *
+     * @return the result of each component, in the order of {@code components}. Sequential solving stops at
+     * the first component without a solution, so the returned list may be shorter than {@code components}.
+     */
+    private List<InferenceResult> solveComponents(List<List<Constraint>> components) {
+        List<InferenceResult> results = new ArrayList<>(components.size());
+        if (componentThreads <= 1 || components.size() <= 1) {
+            for (List<Constraint> component : components) {
+                InferenceResult result = solveComponent(component);
+                results.add(result);
+                if (!result.hasSolution()) {
+                    break;
+                }
+            }
+            return results;
+        }
 
-        VecInt lastClause = null;
+        ThreadFactory threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("uniflow-component-solver-%d")
+                .setDaemon(true)
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(componentThreads, threadFactory);
         try {
-            for (VecInt clause : hardClauses) {
-                lastClause = clause;
-                solver.addHardClause(clause);
+            List<Future<InferenceResult>> futures = new ArrayList<>(components.size());
+            for (List<Constraint> component : components) {
+                futures.add(executor.submit(() -> solveComponent(component)));
             }
-            for (VecInt clause : softClauses) {
-
-                lastClause = clause;
-                solver.addSoftClause(clause);
+            for (Future<InferenceResult> future : futures) {
+                results.add(future.get());
             }
-
-        } catch (ContradictionException ce) {
-            // This happens when adding a clause causes trivial contradiction, such as adding -1 to {1}
-            System.out.println("Not solvable! Contradiction exception " +
-                    "when adding clause: " + lastClause + ".");
-
-            // pass empty set as the unsat explanation
-            // TODO: explain UNSAT possibly by reusing MaxSatSolver.MaxSATUnsatisfiableConstraintExplainer
-            return new DefaultInferenceResult(new HashSet<>());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PluginError(e);
+        } catch (ExecutionException e) {
+            throw new PluginError(e.getCause());
+        } finally {
+            executor.shutdownNow();
         }
+        return results;
+    }
 
-        boolean isSatisfiable;
-        try {
-            // isSatisfiable() launches the solvers and waits until one of them finishes
-            isSatisfiable = solver.isSatisfiable();
+    private InferenceResult solveComponent(List<Constraint> component) {
+        // each component needs its own serializer, as the serializer records the existential variables it creates
+        final CnfVecIntSerializer serializer = createSerializer();
+        final ClauseBuffer clauses = new ClauseBuffer(component.size());
+        serializer.convertAll(component, clauses);
 
-        } catch(TimeoutException te) {
-            throw new RuntimeException("MAX-SAT solving timeout! ");
-        }
+        // Number the variables of this component densely, so the size of the SAT problem only depends on
+        // this component. Ordering them by their original ids keeps the potential variables before their
+        // existential variables, which the decoding below relies on.
+        // TODO: this is a workaround as currently when serialize existential constraint we lost the real existential
+        // TODO: variable id and create "fake" id stored in existentialToPotentialVar map.
+        final int[] vars = clauses.getVariables();
+        clauses.renumber(vars);
 
-        if (!isSatisfiable) {
-            System.out.println("Not solvable!");
-            // pass empty set as the unsat explanation
-            // TODO: explain UNSAT possibly by reusing MaxSatSolver.MaxSATUnsatisfiableConstraintExplainer
-            return new DefaultInferenceResult(new HashSet<>());
+        final int totalVars = vars.length;
+        final HashCode cacheKey = solutionCache.isEnabled() ? clauses.fingerprint() : null;
+
+        int[] solution = cacheKey != null ? solutionCache.lookup(cacheKey, clauses, totalVars) : null;
+        if (solution == null) {
+            solution = solveClauses(clauses, totalVars, cacheKey);
+            if (solution == null) {
+                // the unsat core is computed by explainUnsat() from the original constraints
+                return new DefaultInferenceResult(new HashSet<>());
+            }
         }
 
-        int[] solution = solver.model();
         // The following code decodes VecInt solution to the slot-annotation mappings
         final Map<Integer, Qualifier> decodedSolution = new HashMap<>();
         final Map<Integer, Integer> existentialToPotentialIds = serializer.getExistentialToPotentialVar();
 
-        for (Integer var : solution) {
-            Integer potential = existentialToPotentialIds.get(Math.abs(var));
+        for (int localVar : solution) {
+            // map back to the original variable; keep the sign separately as slot ids start from 0
+            boolean isNegative = localVar < 0;
+            int var = vars[Math.abs(localVar) - 1];
+            Integer potential = existentialToPotentialIds.get(var);
             if (potential != null) {
                 // Assume the 'solution' output by the solver is already sorted in the ascending order
                 // of their absolute values. So the existential variables come after the potential variables,
                 // which means the potential slot corresponding to the current existential variable is
                 // already inserted into 'solutions'
                 assert decodedSolution.containsKey(potential);
-                if (var < 0) {
+                if (isNegative) {
                     // The existential variable is false, so the potential variable should not be inserted.
                     // Remove it from the solution.
                     decodedSolution.remove(potential);
                 }
             } else {
-                boolean isTop = var < 0;
-                if (isTop) {
-                    var = -var;
-                }
-                decodedSolution.put(var, isTop ? top : bottom);
+                decodedSolution.put(var, isNegative ? top : bottom);
             }
         }
 
         return new DefaultInferenceResult(decodedSolution);
     }
+
+    /**
+     * Solves the renumbered clauses of a component with SAT4J.
+     *
+     * @param cacheKey the key to store the model in {@link SolutionCache}, or null to not cache it
+     * @return the model in the format of {@link ClauseBuffer#isSatisfiedBy(int[])}, or null if unsatisfiable
+     */
+    private int @Nullable [] solveClauses(ClauseBuffer clauses, int totalVars, @Nullable HashCode cacheKey) {
+        final int totalClauses = clauses.size();
+
+        final WeightedMaxSatDecorator maxSatSolver = new WeightedMaxSatDecorator(portfolio.createSolver(totalClauses));
+        // The optimization adapter keeps the last model it found, and returns it if it times out while
+        // looking for a better one.
+        final OptToPBSATAdapter optimizer = bestModelOnTimeout
+                ? new OptToPBSATAdapter(new PseudoOptDecorator(maxSatSolver))
+                : null;
+        final IPBSolver solver = optimizer != null ? optimizer : maxSatSolver;
+
+        maxSatSolver.newVar(totalVars);
+        maxSatSolver.setExpectedNumberOfClauses(totalClauses);
+
+        // all components share one deadline, so the timeout bounds the whole solve
+        long remainingMillis = deadlineMillis - System.currentTimeMillis();
+        if (remainingMillis <= 0) {
+            throw new RuntimeException("MAX-SAT solving timeout! ");
+        }
+        solver.setTimeoutMs(remainingMillis);
+
+        int lastClause = -1;
+        try {
+            // SAT4J copies the literals of hard clauses, so a single vector can be reused for all of them
+            VecInt hardClause = new VecInt();
+            for (int i = 0; i < clauses.size(); ++i) {
+                if (clauses.isHard(i)) {
+                    lastClause = i;
+                    maxSatSolver.addHardClause(clauses.getClause(i, hardClause));
+                }
+            }
+            for (int i = 0; i < clauses.size(); ++i) {
+                if (!clauses.isHard(i)) {
+                    lastClause = i;
+                    maxSatSolver.addSoftClause(clauses.getWeight(i), clauses.getClause(i));
+                }
+            }
+
+        } catch (ContradictionException ce) {
+            // This happens when adding a clause causes trivial contradiction, such as adding -1 to {1}
+            logger.info("Not solvable! Contradiction exception when adding clause: {}.", clauses.getClause(lastClause));
+            return null;
+        }
+
+        boolean isSatisfiable;
+        try {
+            // isSatisfiable() launches the solvers and waits until one of them finishes
+            isSatisfiable = solver.isSatisfiable();
+
+        } catch(TimeoutException te) {
+            throw new RuntimeException("MAX-SAT solving timeout! ");
+        }
+
+        if (!isSatisfiable) {
+            logger.info("Not solvable!");
+            return null;
+        }
+
+        // Keep the literals of the component's variables in ascending order, dropping the selector variables
+        // created by SAT4J for soft clauses.
+        int[] model = new int[totalVars];
+        for (int lit : solver.model()) {
+            int var = Math.abs(lit);
+            if (var <= totalVars) {
+                model[var - 1] = lit;
+            }
+        }
+        for (int var = 1; var <= totalVars; ++var) {
+            if (model[var - 1] == 0) {
+                // SAT4J leaves out unassigned variables; any value works for them
+                model[var - 1] = -var;
+            }
+        }
+
+        // a model found before a timeout may not be optimal, so it isn't reused by later compilations
+        boolean isOptimal = optimizer == null || clauses.getNumSoftClauses() == 0 || optimizer.isOptimal();
+        if (cacheKey != null && isOptimal) {
+            solutionCache.store(cacheKey, model);
+        }
+        return model;
+    }
 }
@@ -0,0 +1,177 @@
+package org.uniflow.core.solver;
+
+import com.google.common.hash.HashCode;
+import com.sun.tools.javac.util.Context;
+import org.uniflow.core.PluginOptions;
+import org.uniflow.core.model.reporting.PluginError;
+import org.uniflow.core.solver.serializer.ClauseBuffer;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A persistent cache of the models of solved constraint components, so a later compilation can skip solving
+ * the components that didn't change.
+ * <p>
+ * Slot ids are assigned from scratch in every compilation, so a component is identified by the
+ * {@link ClauseBuffer#fingerprint() fingerprint} of its clauses after they are renumbered densely. Unchanged
+ * code produces the same clauses, even if the slot ids are shifted by changes elsewhere. A cached model is
+ * only used if it satisfies all hard clauses of the component, so a fingerprint collision can't produce a
+ * wrong solution.
+ * <p>
+ * The cache is loaded from {@link PluginOptions#getSolverCacheFile()} and written back by {@link #save()}.
+ * Only the models used or added in the current compilation are written back, so components of code that
+ * no longer exists are evicted.
+ */
+public final class SolutionCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SolutionCache.class);
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final @Nullable Path file;
+
+    // models of the previous compilation, as the positive variables of each model
+    private final Map<HashCode, BitSet> previousModels = new ConcurrentHashMap<>();
+
+    // models used or added in this compilation
+    private final Map<HashCode, BitSet> currentModels = new ConcurrentHashMap<>();
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    private SolutionCache(Context context) {
+        PluginOptions options = PluginOptions.instance(context);
+        this.file = options.getSolverCacheFile() != null ? Paths.get(options.getSolverCacheFile()) : null;
+        if (file != null && Files.isRegularFile(file)) {
+            load(file);
+        }
+
+        context.put(SolutionCache.class, this);
+    }
+
+    public static SolutionCache instance(Context context) {
+        SolutionCache instance = context.get(SolutionCache.class);
+        if (instance == null) {
+            instance = new SolutionCache(context);
+        }
+        return instance;
+    }
+
+    public boolean isEnabled() {
+        return file != null;
+    }
+
+    /**
+     * @param key the fingerprint of {@code clauses}
+     * @param clauses the renumbered clauses of a component
+     * @param numVars the number of variables of {@code clauses}
+     * @return a model of {@code clauses} in the format of {@link ClauseBuffer#isSatisfiedBy(int[])}, or null
+     */
+    public int @Nullable [] lookup(HashCode key, ClauseBuffer clauses, int numVars) {
+        BitSet positiveVars = currentModels.get(key);
+        if (positiveVars == null) {
+            positiveVars = previousModels.get(key);
+        }
+        if (positiveVars != null) {
+            int[] model = new int[numVars];
+            for (int var = 1; var <= numVars; ++var) {
+                model[var - 1] = positiveVars.get(var) ? var : -var;
+            }
+            if (clauses.isSatisfiedBy(model)) {
+                hits.incrementAndGet();
+                currentModels.put(key, positiveVars);
+                return model;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * @param key the fingerprint of the clauses of a component
+     * @param model a model of the clauses in the format of {@link ClauseBuffer#isSatisfiedBy(int[])}
+     */
+    public void store(HashCode key, int[] model) {
+        BitSet positiveVars = new BitSet(model.length + 1);
+        for (int lit : model) {
+            if (lit > 0) {
+                positiveVars.set(lit);
+            }
+        }
+        currentModels.put(key, positiveVars);
+    }
+
+    /**
+     * Writes the models used or added in this compilation to the cache file.
+     */
+    public void save() {
+        if (file == null) {
+            return;
+        }
+        logger.debug("Solution cache: {} hits, {} misses", hits.get(), misses.get());
+
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            // write to a temporary file first, so a failed write doesn't corrupt the cache
+            Path tempFile = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(currentModels.size());
+                for (Map.Entry<HashCode, BitSet> entry : currentModels.entrySet()) {
+                    byte[] key = entry.getKey().asBytes();
+                    out.writeInt(key.length);
+                    out.write(key);
+                    long[] model = entry.getValue().toLongArray();
+                    out.writeInt(model.length);
+                    for (long word : model) {
+                        out.writeLong(word);
+                    }
+                }
+            }
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new PluginError(e);
+        }
+    }
+
+    private void load(Path file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                logger.warn("Ignoring solver cache {} of an unknown format", file);
+                return;
+            }
+            int size = in.readInt();
+            for (int i = 0; i < size; ++i) {
+                byte[] key = new byte[in.readInt()];
+                in.readFully(key);
+                long[] model = new long[in.readInt()];
+                for (int j = 0; j < model.length; ++j) {
+                    model[j] = in.readLong();
+                }
+                previousModels.put(HashCode.fromBytes(key), BitSet.valueOf(model));
+            }
+        } catch (IOException e) {
+            // the cache is only an optimization, so solve from scratch instead of failing
+            logger.warn("Ignoring unreadable solver cache {}: {}", file, e.getMessage());
+            previousModels.clear();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package org.uniflow.core.solver;
+
+import org.sat4j.pb.IPBSolver;
+import org.sat4j.pb.SolverFactory;
+import org.sat4j.pb.tools.ManyCorePB;
+
+/**
+ * The SAT4J solvers to run on a MAX-SAT problem. Each solver of a portfolio runs on its own thread, and
+ * the result of the first one to halt is used.
+ */
+public enum SolverPortfolio {
+    /** {@link #SINGLE} for small problems and {@link #BOTH} otherwise. */
+    AUTO,
+    /** The default SAT4J solver, on the calling thread. */
+    SINGLE,
+    /** A resolution solver and a cutting planes solver, on 2 threads. */
+    BOTH,
+    /** Resolution, cutting planes, and SAT and UNSAT oriented resolution solvers, on 4 threads. */
+    WIDE;
+
+    /**
+     * Problems with fewer clauses than this are solved by a single solver in {@link #AUTO}. Racing
+     * solvers only pays off for bigger problems.
+     */
+    private static final int SMALL_PROBLEM_CLAUSES = 1000;
+
+    public IPBSolver createSolver(int numClauses) {
+        return switch (this) {
+            case AUTO -> (numClauses < SMALL_PROBLEM_CLAUSES ? SINGLE : BOTH).createSolver(numClauses);
+            case SINGLE -> SolverFactory.newDefault();
+            case BOTH -> SolverFactory.newBoth();
+            case WIDE -> new ManyCorePB<IPBSolver>(
+                    SolverFactory.newResolution(),
+                    SolverFactory.newCuttingPlanes(),
+                    SolverFactory.newSAT(),
+                    SolverFactory.newUNSAT()
+            );
+        };
+    }
+}
@@ -0,0 +1,184 @@
+package org.uniflow.core.solver;
+
+import org.uniflow.core.model.constraint.Constraint;
+import org.uniflow.core.model.constraint.PreferenceConstraint;
+import org.uniflow.core.model.util.serialization.Serializer;
+import org.uniflow.core.solver.serializer.ClauseBuffer;
+import org.uniflow.core.solver.serializer.ClauseSink;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.ISolver;
+import org.sat4j.specs.IVecInt;
+import org.sat4j.specs.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Explains why a set of constraints is unsatisfiable by a small subset of them, the unsat core.
+ * <p>
+ * Each constraint gets a selector variable {@code s}, and every clause of the constraint is weakened to
+ * {@code clause || !s}. All clauses are added to a single SAT solver, which is then only queried with
+ * different selectors as assumptions, so it keeps what it learned between the queries:
+ * <ol>
+ *     <li>Solving with all selectors gives an initial core, the selectors the solver used to prove
+ *     unsatisfiability.</li>
+ *     <li>The core is minimized by deletion: each constraint of the core is left out in turn. If the rest is
+ *     still unsatisfiable, the constraint is dropped, along with all others the solver didn't need for the new
+ *     proof. Otherwise, the constraint is necessary and kept.</li>
+ * </ol>
+ * The result is a minimal core: leaving out any of its constraints makes it satisfiable. If the timeout
+ * expires while minimizing, the core found so far is returned. {@link PreferenceConstraint}s are soft, so they
+ * are never in a core and aren't serialized.
+ */
+public final class UnsatCoreExtractor {
+
+    private static final Logger logger = LoggerFactory.getLogger(UnsatCoreExtractor.class);
+
+    private UnsatCoreExtractor() {
+    }
+
+    /**
+     * @param constraints the constraints to explain
+     * @param serializer the serializer that converts the constraints to clauses
+     * @param backgroundClauses adds clauses that always hold, e.g. the axioms of an encoding, after the
+     *                          constraints are serialized; or null if there are none
+     * @param timeoutMillis the time to spend on finding and minimizing the core
+     * @return a minimal unsatisfiable subset of {@code constraints} in their original order, or an empty set if
+     * {@code constraints} are satisfiable or no core was found in time
+     */
+    public static Set<Constraint> extract(List<Constraint> constraints,
+                                          Serializer<VecInt[], VecInt[]> serializer,
+                                          @Nullable Consumer<ClauseSink> backgroundClauses,
+                                          long timeoutMillis) {
+        long deadlineMillis = System.currentTimeMillis() + timeoutMillis;
+
+        ClauseBuffer clauses = new ClauseBuffer(constraints.size());
+        // clauseEnds[k] is the index after the last clause of constraint k
+        int[] clauseEnds = new int[constraints.size()];
+        for (int k = 0; k < constraints.size(); ++k) {
+            if (!(constraints.get(k) instanceof PreferenceConstraint)) {
+                for (VecInt clause : constraints.get(k).serialize(serializer)) {
+                    clauses.add(clause, ClauseBuffer.HARD);
+                }
+            }
+            clauseEnds[k] = clauses.size();
+        }
+        if (backgroundClauses != null) {
+            backgroundClauses.accept(clauses);
+        }
+
+        int[] vars = clauses.getVariables();
+        clauses.renumber(vars);
+        // the selector of constraint k is variable numVars + k + 1
+        int numVars = vars.length;
+
+        ISolver solver = SolverFactory.newDefault();
+        solver.newVar(numVars + constraints.size());
+        solver.setExpectedNumberOfClauses(clauses.size());
+        try {
+            VecInt clause = new VecInt();
+            int k = 0;
+            for (int i = 0; i < clauses.size(); ++i) {
+                while (k < clauseEnds.length && i >= clauseEnds[k]) {
+                    ++k;
+                }
+                clauses.getClause(i, clause);
+                if (k < clauseEnds.length) {
+                    clause.push(-(numVars + k + 1));
+                }
+                solver.addClause(clause);
+            }
+        } catch (ContradictionException e) {
+            // only background clauses aren't weakened by a selector, so they are unsatisfiable on their own
+            logger.debug("Background clauses are unsatisfiable");
+            return Set.of();
+        }
+
+        IVecInt core = new VecInt(constraints.size());
+        for (int k = 0; k < constraints.size(); ++k) {
+            if (!(constraints.get(k) instanceof PreferenceConstraint)) {
+                core.push(numVars + k + 1);
+            }
+        }
+
+        try {
+            if (!isUnsatisfiable(solver, core, deadlineMillis)) {
+                return Set.of();
+            }
+        } catch (TimeoutException e) {
+            logger.warn("Timeout while looking for an unsat core");
+            return Set.of();
+        }
+
+        try {
+            core = refine(core, solver.unsatExplanation());
+            int initialSize = core.size();
+
+            int i = 0;
+            while (i < core.size()) {
+                IVecInt candidate = new VecInt(core.size() - 1);
+                for (int j = 0; j < core.size(); ++j) {
+                    if (j != i) {
+                        candidate.push(core.get(j));
+                    }
+                }
+                if (isUnsatisfiable(solver, candidate, deadlineMillis)) {
+                    // the constraint isn't needed, and the new proof may not need others either
+                    core = refine(candidate, solver.unsatExplanation());
+                } else {
+                    ++i;
+                }
+            }
+            logger.debug("Minimized unsat core from {} to {} constraints", initialSize, core.size());
+        } catch (TimeoutException e) {
+            logger.warn("Timeout while minimizing the unsat core, reporting a core of {} constraints", core.size());
+        }
+
+        Set<Constraint> result = new LinkedHashSet<>();
+        int[] selectors = core.toArray();
+        Arrays.sort(selectors, 0, core.size());
+        for (int j = 0; j < core.size(); ++j) {
+            result.add(constraints.get(selectors[j] - numVars - 1));
+        }
+        return result;
+    }
+
+    private static boolean isUnsatisfiable(ISolver solver, IVecInt assumptions, long deadlineMillis)
+            throws TimeoutException {
+        long remainingMillis = deadlineMillis - System.currentTimeMillis();
+        if (remainingMillis <= 0) {
+            throw new TimeoutException();
+        }
+        solver.setTimeoutMs(remainingMillis);
+        return !solver.isSatisfiable(assumptions);
+    }
+
+    /**
+     * @return the selectors of {@code core} that are in {@code explanation}, or {@code core} if the solver
+     * gave no explanation
+     */
+    private static IVecInt refine(IVecInt core, @Nullable IVecInt explanation) {
+        if (explanation == null) {
+            return core;
+        }
+        Set<Integer> explained = new LinkedHashSet<>();
+        for (int j = 0; j < explanation.size(); ++j) {
+            explained.add(Math.abs(explanation.get(j)));
+        }
+        IVecInt refined = new VecInt(Math.min(core.size(), explained.size()));
+        for (int j = 0; j < core.size(); ++j) {
+            if (explained.contains(core.get(j))) {
+                refined.push(core.get(j));
+            }
+        }
+        return refined;
+    }
+}
@@ -0,0 +1,191 @@
+package org.uniflow.core.solver.serializer;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.sat4j.core.VecInt;
+import org.sat4j.specs.IVecInt;
+
+import java.util.Arrays;
+
+/**
+ * A compact store of CNF clauses. The literals of all clauses are kept in one growable {@code int[]}, with
+ * an offset index marking where each clause starts and a parallel array holding the weight of each clause.
+ * <p>
+ * Compared to a list of {@link VecInt}s, this needs no object per clause, which matters for inputs with
+ * millions of clauses.
+ */
+public final class ClauseBuffer implements ClauseSink {
+
+    /**
+     * The weight of a hard clause. Soft clauses have non-negative weights, so a soft clause is never mistaken
+     * for a hard one.
+     */
+    public static final int HARD = -1;
+
+    private static final int INITIAL_CLAUSES = 16;
+
+    private int[] literals;
+    private int numLiterals;
+
+    // offsets[i] is the start of clause i in literals, and offsets[numClauses] == numLiterals
+    private int[] offsets;
+    private int[] weights;
+    private int numClauses;
+    private int numHardClauses;
+
+    public ClauseBuffer() {
+        this(INITIAL_CLAUSES);
+    }
+
+    public ClauseBuffer(int expectedClauses) {
+        int capacity = Math.max(expectedClauses, 1);
+        this.literals = new int[capacity * 2];
+        this.offsets = new int[capacity + 1];
+        this.weights = new int[capacity];
+    }
+
+    /**
+     * Appends a clause. Empty clauses are ignored, matching
+     * {@link CnfVecIntSerializer#convertAll(Iterable, java.util.List, java.util.List)}.
+     *
+     * @param clause the literals of the clause
+     * @param weight {@link #HARD} for a hard clause, or the non-negative weight of a soft clause
+     */
+    @Override
+    public void add(IVecInt clause, int weight) {
+        int size = clause.size();
+        if (size == 0) {
+            return;
+        }
+        ensureCapacity(size);
+        for (int i = 0; i < size; ++i) {
+            literals[numLiterals++] = clause.get(i);
+        }
+        weights[numClauses] = weight;
+        offsets[++numClauses] = numLiterals;
+        if (weight == HARD) {
+            ++numHardClauses;
+        }
+    }
+
+    private void ensureCapacity(int clauseSize) {
+        if (numLiterals + clauseSize > literals.length) {
+            literals = Arrays.copyOf(literals, Math.max(literals.length * 2, numLiterals + clauseSize));
+        }
+        if (numClauses + 1 >= offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            weights = Arrays.copyOf(weights, offsets.length - 1);
+        }
+    }
+
+    public int size() {
+        return numClauses;
+    }
+
+    public int getNumHardClauses() {
+        return numHardClauses;
+    }
+
+    public int getNumSoftClauses() {
+        return numClauses - numHardClauses;
+    }
+
+    public boolean isHard(int clause) {
+        return weights[clause] == HARD;
+    }
+
+    public int getWeight(int clause) {
+        return weights[clause];
+    }
+
+    /**
+     * Copies the literals of a clause into {@code reuse}, so callers can stream the clauses without allocating
+     * a {@link VecInt} for each of them.
+     *
+     * @return {@code reuse}
+     */
+    public VecInt getClause(int clause, VecInt reuse) {
+        reuse.clear();
+        for (int i = offsets[clause]; i < offsets[clause + 1]; ++i) {
+            reuse.push(literals[i]);
+        }
+        return reuse;
+    }
+
+    public VecInt getClause(int clause) {
+        return getClause(clause, new VecInt(offsets[clause + 1] - offsets[clause]));
+    }
+
+    /**
+     * @return the sorted, distinct variables of all clauses
+     */
+    public int[] getVariables() {
+        int[] vars = new int[numLiterals];
+        for (int i = 0; i < numLiterals; ++i) {
+            vars[i] = Math.abs(literals[i]);
+        }
+        Arrays.sort(vars);
+
+        int size = 0;
+        for (int i = 0; i < vars.length; ++i) {
+            if (size == 0 || vars[size - 1] != vars[i]) {
+                vars[size++] = vars[i];
+            }
+        }
+        return Arrays.copyOf(vars, size);
+    }
+
+    /**
+     * Replaces each variable by its 1-based index in {@code vars}, keeping the sign of each literal.
+     *
+     * @param vars sorted variables containing all variables of the clauses, e.g. from {@link #getVariables()}
+     */
+    public void renumber(int[] vars) {
+        for (int i = 0; i < numLiterals; ++i) {
+            int lit = literals[i];
+            int localVar = Arrays.binarySearch(vars, Math.abs(lit)) + 1;
+            assert localVar > 0 : "Variable " + Math.abs(lit) + " is not in vars";
+            literals[i] = lit < 0 ? -localVar : localVar;
+        }
+    }
+
+    /**
+     * @return a hash of the clauses and their weights. Buffers with the same clauses in the same order have the
+     * same fingerprint.
+     */
+    public HashCode fingerprint() {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putInt(numClauses);
+        for (int clause = 0; clause < numClauses; ++clause) {
+            hasher.putInt(weights[clause]);
+            hasher.putInt(offsets[clause + 1] - offsets[clause]);
+            for (int i = offsets[clause]; i < offsets[clause + 1]; ++i) {
+                hasher.putInt(literals[i]);
+            }
+        }
+        return hasher.hash();
+    }
+
+    /**
+     * @param model a model in the format of {@link org.sat4j.specs.ISolver#model()}, i.e. the literal of
+     *              variable {@code v} is at index {@code v - 1}
+     * @return true if {@code model} assigns every variable of the clauses and satisfies all hard clauses
+     */
+    public boolean isSatisfiedBy(int[] model) {
+        for (int clause = 0; clause < numClauses; ++clause) {
+            if (!isHard(clause)) {
+                continue;
+            }
+            boolean satisfied = false;
+            for (int i = offsets[clause]; i < offsets[clause + 1] && !satisfied; ++i) {
+                int var = Math.abs(literals[i]);
+                satisfied = var <= model.length && model[var - 1] == literals[i];
+            }
+            if (!satisfied) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,16 @@
+package org.uniflow.core.solver.serializer;
+
+import org.sat4j.specs.IVecInt;
+
+/**
+ * A consumer of the weighted clauses produced by
+ * {@link CnfVecIntSerializer#convertAll(Iterable, ClauseSink)}.
+ */
+public interface ClauseSink {
+
+    /**
+     * @param clause the literals of the clause, which the sink must copy if it keeps them
+     * @param weight {@link ClauseBuffer#HARD} for a hard clause, or the non-negative weight of a soft clause
+     */
+    void add(IVecInt clause, int weight);
+}
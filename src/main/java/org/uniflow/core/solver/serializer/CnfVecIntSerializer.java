@@ -373,6 +373,24 @@ public abstract class CnfVecIntSerializer implements Serializer<VecInt[], VecInt
         }
     }
 
+    /**
+     * Convert all the given mandatory constraints to hard clauses, and preference constraints
+     * to soft clauses weighted by {@link PreferenceConstraint#getWeight()}.
+     *
+     * @param constraints the constraints to convert
+     * @param clauses the sink for the output clauses, which receives them as each constraint is converted
+     */
+    public void convertAll(Iterable<Constraint> constraints, ClauseSink clauses) {
+        for (Constraint constraint : constraints) {
+            int weight = constraint instanceof PreferenceConstraint preferenceConstraint
+                    ? preferenceConstraint.getWeight()
+                    : ClauseBuffer.HARD;
+            for (VecInt res : constraint.serialize(this)) {
+                clauses.add(res, weight);
+            }
+        }
+    }
+
     protected abstract boolean isTop(ConstantSlot constantSlot);
 
     VecInt asVec(int ... vars) {
@@ -0,0 +1,506 @@
+package org.uniflow.core.solver.serializer;
+
+import com.sun.tools.javac.util.Context;
+import org.uniflow.core.model.constraint.AlwaysFalseConstraint;
+import org.uniflow.core.model.constraint.AlwaysTrueConstraint;
+import org.uniflow.core.model.constraint.ArithmeticConstraint;
+import org.uniflow.core.model.constraint.ComparableConstraint;
+import org.uniflow.core.model.constraint.ComparisonConstraint;
+import org.uniflow.core.model.constraint.Constraint;
+import org.uniflow.core.model.constraint.EqualityConstraint;
+import org.uniflow.core.model.constraint.ExistentialConstraint;
+import org.uniflow.core.model.constraint.ImplicationConstraint;
+import org.uniflow.core.model.constraint.InequalityConstraint;
+import org.uniflow.core.model.constraint.PreferenceConstraint;
+import org.uniflow.core.model.constraint.SubtypeConstraint;
+import org.uniflow.core.model.constraint.ViewpointAdaptationConstraint;
+import org.uniflow.core.model.qualifier.Qualifier;
+import org.uniflow.core.model.reporting.PluginError;
+import org.uniflow.core.model.slot.ArithmeticSlot;
+import org.uniflow.core.model.slot.ComparisonSlot;
+import org.uniflow.core.model.slot.ConstantSlot;
+import org.uniflow.core.model.slot.ExistentialSlot;
+import org.uniflow.core.model.slot.MergeSlot;
+import org.uniflow.core.model.slot.PolymorphicInstanceSlot;
+import org.uniflow.core.model.slot.RefinementSlot;
+import org.uniflow.core.model.slot.Slot;
+import org.uniflow.core.model.slot.SlotManager;
+import org.uniflow.core.model.slot.SourceSlot;
+import org.uniflow.core.model.slot.ViewpointAdaptationSlot;
+import org.uniflow.core.model.util.serialization.Serializer;
+import org.uniflow.core.typesystem.QualifierHierarchy;
+import org.sat4j.core.VecInt;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * Converts constraints of a hierarchy with any number of qualifiers to CNF clauses. Each variable slot is
+ * encoded by a fixed number of boolean variables, chosen by the shape of the hierarchy:
+ * <ul>
+ *     <li>{@link Encoding#ORDER} if the qualifiers form a chain. Variable {@code t} of a slot means "the slot
+ *     is at least the {@code t}-th qualifier from the bottom", so a subtype constraint only needs one binary
+ *     clause per qualifier.</li>
+ *     <li>{@link Encoding#LOG} otherwise. The variables of a slot are the bits of the index of its qualifier,
+ *     so {@code N} qualifiers only need {@code ceil(log2(N))} variables per slot.</li>
+ * </ul>
+ * The clauses forbidding the pairs of qualifiers that violate a constraint are computed once per hierarchy
+ * from its subtype table, and only instantiated with the variables of the slots for each constraint.
+ * <p>
+ * Like {@link CnfVecIntSerializer}, existential constraints are guarded by a fresh variable per potential
+ * slot, and preference, implication, arithmetic and comparison constraints are not supported.
+ */
+public class LatticeVecIntSerializer implements Serializer<VecInt[], VecInt[]> {
+
+    public enum Encoding {
+        LOG, ORDER
+    }
+
+    private final QualifierHierarchy qualifierHierarchy;
+
+    // the qualifiers of the hierarchy; for ORDER, from the bottom to the top
+    private final List<Qualifier> qualifiers;
+
+    private final Map<Qualifier, Integer> qualifierIndices = new HashMap<>();
+
+    private final boolean[][] isSubtype;
+
+    private final Encoding encoding;
+
+    private final int varsPerSlot;
+
+    private final int numSlots;
+
+    // clause templates over the local variables 1..varsPerSlot of a first slot and
+    // varsPerSlot+1..2*varsPerSlot of a second slot
+    private final List<int[]> notSubtypeClauses;
+    private final List<int[]> equalClauses;
+    private final List<int[]> incomparableClauses;
+
+    // clauses over the local variables of one slot that rule out values not representing any qualifier
+    private final List<int[]> axiomClauses;
+
+    /** existential variable mapped to the id of its potential slot */
+    private final Map<Integer, Integer> existentialToPotentialVar = new LinkedHashMap<>();
+
+    private final Map<Integer, Integer> potentialToExistentialVar = new HashMap<>();
+
+    private final BitSet encodedSlots = new BitSet();
+
+    public LatticeVecIntSerializer(Context context, QualifierHierarchy qualifierHierarchy) {
+        this.qualifierHierarchy = qualifierHierarchy;
+        this.numSlots = SlotManager.instance(context).getSlots().size();
+
+        List<Qualifier> allQualifiers = new ArrayList<>();
+        for (Qualifier qualifier : qualifierHierarchy.getAllDefaultQualifiers()) {
+            if (!qualifierHierarchy.isPolymorphicQualifier(qualifier)) {
+                allQualifiers.add(qualifier);
+            }
+        }
+        if (allQualifiers.size() < 2) {
+            throw new PluginError("Hierarchy %s needs at least 2 qualifiers",
+                    qualifierHierarchy.getClass().getSimpleName());
+        }
+
+        boolean isChain = true;
+        for (Qualifier q1 : allQualifiers) {
+            for (Qualifier q2 : allQualifiers) {
+                isChain &= qualifierHierarchy.isSubtype(q1, q2) || qualifierHierarchy.isSubtype(q2, q1);
+            }
+        }
+        if (isChain) {
+            // the more qualifiers a qualifier is a supertype of, the higher it is in the chain
+            Map<Qualifier, Integer> ranks = new HashMap<>();
+            for (Qualifier q : allQualifiers) {
+                ranks.put(q, (int) allQualifiers.stream().filter(other -> qualifierHierarchy.isSubtype(other, q)).count());
+            }
+            allQualifiers.sort(Comparator.comparing(ranks::get));
+        }
+        this.qualifiers = allQualifiers;
+        this.encoding = isChain ? Encoding.ORDER : Encoding.LOG;
+
+        int n = qualifiers.size();
+        this.varsPerSlot = encoding == Encoding.ORDER ? n - 1 : 32 - Integer.numberOfLeadingZeros(n - 1);
+        this.isSubtype = new boolean[n][n];
+        for (int i = 0; i < n; ++i) {
+            qualifierIndices.put(qualifiers.get(i), i);
+            for (int j = 0; j < n; ++j) {
+                isSubtype[i][j] = qualifierHierarchy.isSubtype(qualifiers.get(i), qualifiers.get(j));
+            }
+        }
+
+        this.notSubtypeClauses = forbidPairs((i, j) -> !isSubtype[i][j]);
+        this.equalClauses = forbidPairs((i, j) -> i == j);
+        this.incomparableClauses = forbidPairs((i, j) -> !isSubtype[i][j] && !isSubtype[j][i]);
+        this.axiomClauses = createAxiomClauses();
+    }
+
+    private interface PairPredicate {
+        boolean test(int i, int j);
+    }
+
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
+    public Map<Integer, Integer> getExistentialToPotentialVar() {
+        return existentialToPotentialVar;
+    }
+
+    /**
+     * @return the ids of the slots that occur in the converted constraints
+     */
+    public BitSet getEncodedSlots() {
+        return encodedSlots;
+    }
+
+    /**
+     * Converts the constraints to hard clauses, followed by the clauses that restrict each encoded slot to
+     * the values of the qualifiers.
+     */
+    public void convertAll(Iterable<Constraint> constraints, ClauseSink clauses) {
+        for (Constraint constraint : constraints) {
+            for (VecInt clause : constraint.serialize(this)) {
+                clauses.add(clause, ClauseBuffer.HARD);
+            }
+        }
+        addAxioms(clauses);
+    }
+
+    /**
+     * Adds the clauses that restrict each slot encoded so far to the values of the qualifiers.
+     */
+    public void addAxioms(ClauseSink clauses) {
+        for (int slot = encodedSlots.nextSetBit(0); slot >= 0; slot = encodedSlots.nextSetBit(slot + 1)) {
+            int base = getBaseVar(slot);
+            for (int[] axiom : axiomClauses) {
+                clauses.add(instantiate(axiom, base, 0), ClauseBuffer.HARD);
+            }
+        }
+    }
+
+    /**
+     * @param slotId the id of an encoded slot
+     * @param isTrue the value of each variable in the model
+     * @return the qualifier of the slot in the model
+     */
+    public Qualifier decode(int slotId, IntPredicate isTrue) {
+        int base = getBaseVar(slotId);
+        int index = 0;
+        for (int b = 1; b <= varsPerSlot; ++b) {
+            if (isTrue.test(base + b)) {
+                index = encoding == Encoding.ORDER ? b : index | 1 << (b - 1);
+            }
+        }
+        return qualifiers.get(index);
+    }
+
+    private int getBaseVar(int slotId) {
+        return slotId * varsPerSlot;
+    }
+
+    /**
+     * @return the literals over the local variables {@code offset + 1 ... offset + varsPerSlot} that together
+     * hold iff the slot is the {@code index}-th qualifier
+     */
+    private int[] valueLiterals(int index, int offset) {
+        if (encoding == Encoding.ORDER) {
+            // at least the index-th qualifier, and not at least the next one
+            List<Integer> literals = new ArrayList<>(2);
+            if (index > 0) {
+                literals.add(offset + index);
+            }
+            if (index < varsPerSlot) {
+                literals.add(-(offset + index + 1));
+            }
+            return literals.stream().mapToInt(Integer::intValue).toArray();
+        }
+        int[] literals = new int[varsPerSlot];
+        for (int b = 0; b < varsPerSlot; ++b) {
+            literals[b] = (index >> b & 1) == 1 ? offset + b + 1 : -(offset + b + 1);
+        }
+        return literals;
+    }
+
+    /**
+     * @return one clause per pair of qualifiers in {@code forbidden}, ruling out that the first slot is the
+     * first qualifier and the second slot the second one
+     */
+    private List<int[]> forbidPairs(PairPredicate forbidden) {
+        List<int[]> clauses = new ArrayList<>();
+        for (int i = 0; i < qualifiers.size(); ++i) {
+            for (int j = 0; j < qualifiers.size(); ++j) {
+                if (forbidden.test(i, j)) {
+                    clauses.add(negate(valueLiterals(i, 0), valueLiterals(j, varsPerSlot)));
+                }
+            }
+        }
+        return clauses;
+    }
+
+    private List<int[]> createAxiomClauses() {
+        List<int[]> clauses = new ArrayList<>();
+        if (encoding == Encoding.ORDER) {
+            // at least the (t+1)-th qualifier implies at least the t-th one
+            for (int t = 1; t < varsPerSlot; ++t) {
+                clauses.add(new int[]{-(t + 1), t});
+            }
+        } else {
+            for (int code = qualifiers.size(); code < 1 << varsPerSlot; ++code) {
+                clauses.add(negate(valueLiterals(code, 0)));
+            }
+        }
+        return clauses;
+    }
+
+    private static int[] negate(int[]... conjunctions) {
+        int size = 0;
+        for (int[] conjunction : conjunctions) {
+            size += conjunction.length;
+        }
+        int[] clause = new int[size];
+        int i = 0;
+        for (int[] conjunction : conjunctions) {
+            for (int lit : conjunction) {
+                clause[i++] = -lit;
+            }
+        }
+        return clause;
+    }
+
+    /**
+     * Maps the local variables of a template to the variables of two slots.
+     */
+    private VecInt instantiate(int[] template, int firstBase, int secondBase) {
+        VecInt clause = new VecInt(template.length);
+        for (int lit : template) {
+            int var = Math.abs(lit);
+            int mapped = var <= varsPerSlot ? firstBase + var : secondBase + var - varsPerSlot;
+            clause.push(lit < 0 ? -mapped : mapped);
+        }
+        return clause;
+    }
+
+    private int encode(Slot slot) {
+        encodedSlots.set(slot.getId());
+        return getBaseVar(slot.getId());
+    }
+
+    private int indexOf(ConstantSlot slot) {
+        Integer index = qualifierIndices.get(slot.getValue());
+        if (index == null) {
+            throw new PluginError("Qualifier %s is not a default qualifier of %s",
+                    slot.getValue(), qualifierHierarchy.getClass().getSimpleName());
+        }
+        return index;
+    }
+
+    /**
+     * Converts a constraint between two slots that forbids the pairs of qualifiers matched by
+     * {@code templates} and {@code forbidden}.
+     */
+    private VecInt[] forbid(Slot first, Slot second, List<int[]> templates, PairPredicate forbidden) {
+        if (first instanceof ConstantSlot c1 && second instanceof ConstantSlot c2) {
+            if (forbidden.test(indexOf(c1), indexOf(c2))) {
+                // ConstraintManager replaces these constraints by AlwaysFalseConstraint
+                throw new PluginError("Unexpected unsatisfiable constraint between %s and %s", c1, c2);
+            }
+            return CnfVecIntSerializer.emptyClauses;
+        }
+        if (first instanceof ConstantSlot c1) {
+            int index = indexOf(c1);
+            int base = encode(second);
+            List<VecInt> clauses = new ArrayList<>();
+            for (int j = 0; j < qualifiers.size(); ++j) {
+                if (forbidden.test(index, j)) {
+                    clauses.add(instantiate(negate(valueLiterals(j, 0)), base, 0));
+                }
+            }
+            return clauses.toArray(new VecInt[0]);
+        }
+        if (second instanceof ConstantSlot c2) {
+            int index = indexOf(c2);
+            int base = encode(first);
+            List<VecInt> clauses = new ArrayList<>();
+            for (int i = 0; i < qualifiers.size(); ++i) {
+                if (forbidden.test(i, index)) {
+                    clauses.add(instantiate(negate(valueLiterals(i, 0)), base, 0));
+                }
+            }
+            return clauses.toArray(new VecInt[0]);
+        }
+
+        int firstBase = encode(first);
+        int secondBase = encode(second);
+        VecInt[] clauses = new VecInt[templates.size()];
+        for (int i = 0; i < clauses.length; ++i) {
+            clauses[i] = instantiate(templates.get(i), firstBase, secondBase);
+        }
+        return clauses;
+    }
+
+    @Override
+    public VecInt[] serialize(SubtypeConstraint constraint) {
+        Slot subtype = constraint.getSubtype();
+        Slot supertype = constraint.getSupertype();
+        if (encoding == Encoding.ORDER && !(subtype instanceof ConstantSlot) && !(supertype instanceof ConstantSlot)) {
+            // at least the t-th qualifier for the subtype implies the same for the supertype
+            int subBase = encode(subtype);
+            int superBase = encode(supertype);
+            VecInt[] clauses = new VecInt[varsPerSlot];
+            for (int t = 1; t <= varsPerSlot; ++t) {
+                clauses[t - 1] = new VecInt(new int[]{-(subBase + t), superBase + t});
+            }
+            return clauses;
+        }
+        return forbid(subtype, supertype, notSubtypeClauses, (i, j) -> !isSubtype[i][j]);
+    }
+
+    @Override
+    public VecInt[] serialize(EqualityConstraint constraint) {
+        Slot first = constraint.getFirst();
+        Slot second = constraint.getSecond();
+        if (!(first instanceof ConstantSlot) && !(second instanceof ConstantSlot)) {
+            // in both encodings, two slots are equal iff their variables are pairwise equal
+            int firstBase = encode(first);
+            int secondBase = encode(second);
+            VecInt[] clauses = new VecInt[2 * varsPerSlot];
+            for (int b = 1; b <= varsPerSlot; ++b) {
+                clauses[2 * b - 2] = new VecInt(new int[]{-(firstBase + b), secondBase + b});
+                clauses[2 * b - 1] = new VecInt(new int[]{firstBase + b, -(secondBase + b)});
+            }
+            return clauses;
+        }
+        return forbid(first, second, List.of(), (i, j) -> i != j);
+    }
+
+    @Override
+    public VecInt[] serialize(InequalityConstraint constraint) {
+        return forbid(constraint.getFirst(), constraint.getSecond(), equalClauses, (i, j) -> i == j);
+    }
+
+    @Override
+    public VecInt[] serialize(ComparableConstraint constraint) {
+        return forbid(constraint.getFirst(), constraint.getSecond(), incomparableClauses,
+                (i, j) -> !isSubtype[i][j] && !isSubtype[j][i]);
+    }
+
+    @Override
+    public VecInt[] serialize(ExistentialConstraint constraint) {
+        int potentialId = constraint.getPotentialVariable().getId();
+        Integer existentialVar = potentialToExistentialVar.get(potentialId);
+        if (existentialVar == null) {
+            // after the variables of all slots
+            existentialVar = numSlots * varsPerSlot + existentialToPotentialVar.size() + 1;
+            existentialToPotentialVar.put(existentialVar, potentialId);
+            potentialToExistentialVar.put(potentialId, existentialVar);
+        }
+
+        // (E => potential constraints) && (!E => alternate constraints), see CnfVecIntSerializer
+        List<VecInt> clauses = new ArrayList<>();
+        addGuarded(constraint.getPotentialConstraints(), -existentialVar, clauses);
+        addGuarded(constraint.getAlternateConstraints(), existentialVar, clauses);
+        return clauses.toArray(new VecInt[0]);
+    }
+
+    /**
+     * Adds the clauses of {@code constraints}, each extended by {@code guard}.
+     */
+    private void addGuarded(Collection<Constraint> constraints, int guard, List<VecInt> clauses) {
+        for (Constraint constraint : constraints) {
+            if (constraint instanceof AlwaysTrueConstraint) {
+                continue;
+            }
+            if (constraint instanceof AlwaysFalseConstraint) {
+                clauses.add(new VecInt(new int[]{guard}));
+                continue;
+            }
+            for (VecInt clause : constraint.serialize(this)) {
+                clause.insertFirst(guard);
+                clauses.add(clause);
+            }
+        }
+    }
+
+    @Override
+    public VecInt[] serialize(ComparisonConstraint constraint) {
+        throw new UnsupportedOperationException(
+                "Serializing ComparisonConstraint is unsupported in LatticeVecIntSerializer");
+    }
+
+    @Override
+    public VecInt[] serialize(ViewpointAdaptationConstraint constraint) {
+        // same as CnfVecIntSerializer
+        return CnfVecIntSerializer.emptyClauses;
+    }
+
+    @Override
+    public VecInt[] serialize(PreferenceConstraint constraint) {
+        throw new UnsupportedOperationException(
+                "Serializing PreferenceConstraint is unsupported in LatticeVecIntSerializer");
+    }
+
+    @Override
+    public VecInt[] serialize(ImplicationConstraint constraint) {
+        throw new UnsupportedOperationException(
+                "Serializing ImplicationConstraint is unsupported in LatticeVecIntSerializer");
+    }
+
+    @Override
+    public VecInt[] serialize(ArithmeticConstraint constraint) {
+        throw new UnsupportedOperationException(
+                "Serializing ArithmeticConstraint is unsupported in LatticeVecIntSerializer");
+    }
+
+    @Override
+    public VecInt[] serialize(SourceSlot slot) {
+        return null;
+    }
+
+    @Override
+    public VecInt[] serialize(ConstantSlot slot) {
+        return null;
+    }
+
+    @Override
+    public VecInt[] serialize(ExistentialSlot slot) {
+        throw new UnsupportedOperationException("Existential slots should be normalized away before serialization.");
+    }
+
+    @Override
+    public VecInt[] serialize(RefinementSlot slot) {
+        return null;
+    }
+
+    @Override
+    public VecInt[] serialize(ViewpointAdaptationSlot slot) {
+        return null;
+    }
+
+    @Override
+    public VecInt[] serialize(MergeSlot slot) {
+        return null;
+    }
+
+    @Override
+    public VecInt[] serialize(ComparisonSlot slot) {
+        return null;
+    }
+
+    @Override
+    public VecInt[] serialize(ArithmeticSlot slot) {
+        return null;
+    }
+
+    @Override
+    public VecInt[] serialize(PolymorphicInstanceSlot slot) {
+        return null;
+    }
+}
@@ -0,0 +1,133 @@
+package org.uniflow.core.solver.serializer;
+
+import org.sat4j.specs.IVecInt;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams clauses to a file in the WCNF format of the MaxSAT Evaluations since 2022: one clause per line,
+ * {@code h} followed by the literals for a hard clause, the weight followed by the literals for a soft
+ * clause, each terminated by {@code 0}. This format has no header, so clauses can be written as they are
+ * produced, without counting or keeping them first.
+ * <p>
+ * Slot ids start at 0, which terminates a clause in WCNF, so the variable of slot {@code id} is written as
+ * {@code id + 1}. See {@link #toSlotId(int)}.
+ */
+public final class WcnfWriter implements ClauseSink, Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // enough for a sign, the 10 digits of an int and a separator
+    private static final int MAX_INT_LENGTH = 12;
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private int numHardClauses;
+    private int numSoftClauses;
+
+    public WcnfWriter(Path file) throws IOException {
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * @return the slot id of a WCNF variable written by this class
+     */
+    public static int toSlotId(int wcnfVar) {
+        return wcnfVar - 1;
+    }
+
+    /**
+     * Writes a clause. Empty clauses are ignored, matching {@link ClauseBuffer#add(IVecInt, int)}.
+     *
+     * @throws UncheckedIOException if writing to the file fails
+     */
+    @Override
+    public void add(IVecInt clause, int weight) {
+        int size = clause.size();
+        if (size == 0) {
+            return;
+        }
+        try {
+            ensureRemaining(MAX_INT_LENGTH);
+            if (weight == ClauseBuffer.HARD) {
+                buffer.put((byte) 'h').put((byte) ' ');
+                ++numHardClauses;
+            } else {
+                putInt(weight);
+                ++numSoftClauses;
+            }
+            for (int i = 0; i < size; ++i) {
+                ensureRemaining(MAX_INT_LENGTH);
+                int lit = clause.get(i);
+                putInt(lit < 0 ? lit - 1 : lit + 1);
+            }
+            ensureRemaining(2);
+            buffer.put((byte) '0').put((byte) '\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int getNumHardClauses() {
+        return numHardClauses;
+    }
+
+    public int getNumSoftClauses() {
+        return numSoftClauses;
+    }
+
+    /**
+     * Writes {@code value} in decimal followed by a space, without creating a string.
+     */
+    private void putInt(int value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+        }
+        // negate positive values instead of negative ones, so Integer.MIN_VALUE doesn't overflow
+        int negated = value < 0 ? value : -value;
+        int start = buffer.position();
+        do {
+            buffer.put((byte) ('0' - negated % 10));
+            negated /= 10;
+        } while (negated != 0);
+        // the digits were written from the least significant one, so reverse them
+        for (int i = start, j = buffer.position() - 1; i < j; ++i, --j) {
+            byte digit = buffer.get(i);
+            buffer.put(i, buffer.get(j));
+            buffer.put(j, digit);
+        }
+        buffer.put((byte) ' ');
+    }
+
+    private void ensureRemaining(int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
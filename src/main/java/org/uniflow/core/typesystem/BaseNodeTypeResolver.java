@@ -40,6 +40,7 @@ import org.checkerframework.dataflow.cfg.node.AbstractNodeVisitor;
 import org.checkerframework.dataflow.cfg.node.ArrayAccessNode;
 import org.checkerframework.dataflow.cfg.node.ArrayCreationNode;
 import org.checkerframework.dataflow.cfg.node.AssignmentNode;
+import org.checkerframework.dataflow.cfg.node.BinaryOperationNode;
 import org.checkerframework.dataflow.cfg.node.ClassDeclarationNode;
 import org.checkerframework.dataflow.cfg.node.FieldAccessNode;
 import org.checkerframework.dataflow.cfg.node.InstanceOfNode;
@@ -51,6 +52,8 @@ import org.checkerframework.dataflow.cfg.node.ObjectCreationNode;
 import org.checkerframework.dataflow.cfg.node.ReturnNode;
 import org.checkerframework.dataflow.cfg.node.ThisNode;
 import org.checkerframework.dataflow.cfg.node.TypeCastNode;
+import org.checkerframework.dataflow.cfg.node.UnaryOperationNode;
+import org.checkerframework.dataflow.cfg.node.ValueLiteralNode;
 import org.checkerframework.dataflow.cfg.node.VariableDeclarationNode;
 import org.checkerframework.javacutil.TreePathUtil;
 import org.checkerframework.javacutil.TreeUtils;
@@ -137,6 +140,21 @@ public class BaseNodeTypeResolver
         return node.accept(this, input);
     }
 
+    /**
+     * A subclass may resolve any node differently, so this returns false in subclasses. A subclass can
+     * override this method for the nodes it knows to be independent.
+     */
+    @Override
+    public boolean isInputIndependent(Node n) {
+        if (getClass() != BaseNodeTypeResolver.class) {
+            return false;
+        }
+        // the types of these nodes are built from their Java types by visitNode()
+        return n instanceof ValueLiteralNode
+                || n instanceof UnaryOperationNode
+                || n instanceof BinaryOperationNode;
+    }
+
     @Override
     public QualifiedType<ProductSlot> visitNode(Node n, TransferInput<FlowValue, FlowStore> input) {
         return qualifiedTypeBuilder.visit(n.getType(), null);
@@ -18,7 +18,7 @@ import org.uniflow.core.model.element.QualifiedElement;
 import org.uniflow.core.model.element.QualifiedExecutableElement;
 import org.uniflow.core.model.element.QualifiedTypeElement;
 import org.uniflow.core.model.element.QualifiedVariableElement;
-import org.uniflow.core.model.reporting.AnalysisMessage;
+import org.uniflow.core.model.reporting.MessageTable;
 import org.uniflow.core.model.reporting.PluginError;
 import org.uniflow.core.model.slot.ProductSlot;
 import org.uniflow.core.model.type.PrimaryQualifiedType;
@@ -72,6 +72,8 @@ public class BaseTypeChecker implements TypeChecker {
 
     protected final ConstraintManager constraintManager;
 
+    protected final MessageTable messageTable;
+
     protected final DeclarationTypeResolver declarationTypeResolver;
 
     protected final NodeTypeResolver nodeTypeResolver;
@@ -91,6 +93,7 @@ public class BaseTypeChecker implements TypeChecker {
         this.qualifierHierarchies = typeSystem.getQualifierHierarchies();
         this.slotQualifierHierarchy = SlotQualifierHierarchy.instance(context);
         this.constraintManager = ConstraintManager.instance(context);
+        this.messageTable = MessageTable.instance(context);
         this.declarationTypeResolver = typeSystem.getDeclarationTypeResolver();
         this.nodeTypeResolver = typeSystem.getNodeTypeResolver();
         this.typeHierarchy = typeSystem.getTypeHierarchy();
@@ -213,7 +216,7 @@ public class BaseTypeChecker implements TypeChecker {
                     superClauseQualifier,
                     qualifierHierarchies
             );
-            AnalysisMessage unsatMessage = AnalysisMessage.createError(
+            int unsatMessage = messageTable.addError(
                     generalContext.getRoot(),
                     extendsClause != null ? extendsClause : javaElement,
                     "invalid.declaration.extends",
@@ -232,7 +235,7 @@ public class BaseTypeChecker implements TypeChecker {
                         interfaceQualifier,
                         qualifierHierarchies
                 );
-                unsatMessage = AnalysisMessage.createError(
+                unsatMessage = messageTable.addError(
                         generalContext.getRoot(),
                         interfaceSource,
                         "invalid.declaration.impl",
@@ -269,7 +272,7 @@ public class BaseTypeChecker implements TypeChecker {
                             qualifiedTypeElement.getQualifier(),
                             qualifierHierarchies
                     );
-                    AnalysisMessage unsatMessage = AnalysisMessage.createError(
+                    int unsatMessage = messageTable.addError(
                             generalContext.getRoot(),
                             source,
                             "incompatible.type.use",
@@ -299,7 +302,7 @@ public class BaseTypeChecker implements TypeChecker {
             SetMultimap<QualifierHierarchy, Constraint> returnTypeConstraints = typeHierarchy.getSubtypeConstraints(
                     thisMethodType.getReturnType(),
                     overriddenMethodType.getReturnType());
-            AnalysisMessage unsatMessage = AnalysisMessage.createError(
+            int unsatMessage = messageTable.addError(
                     generalContext.getRoot(),
                     returnTypeTree != null ? returnTypeTree : thisMethodJavaElement,
                     "invalid.override.return.type",
@@ -310,7 +313,7 @@ public class BaseTypeChecker implements TypeChecker {
             SetMultimap<QualifierHierarchy, Constraint> receiverTypeConstraints = typeHierarchy.getSubtypeConstraints(
                     overriddenMethodType.getReceiverType(),
                     thisMethodType.getReceiverType());
-            unsatMessage = AnalysisMessage.createError(
+            unsatMessage = messageTable.addError(
                     generalContext.getRoot(),
                     receiverTypeTree != null ? receiverTypeTree : thisMethodJavaElement,
                     "invalid.override.receiver.type",
@@ -324,7 +327,7 @@ public class BaseTypeChecker implements TypeChecker {
                 SetMultimap<QualifierHierarchy, Constraint> paramTypeConstraints = typeHierarchy.getSubtypeConstraints(
                         overriddenParamType.getType(),
                         thisParamType.getType());
-                unsatMessage = AnalysisMessage.createError(
+                unsatMessage = messageTable.addError(
                         generalContext.getRoot(),
                         paramTrees != null ? paramTrees.get(i) : thisMethodJavaElement,
                         "invalid.override.param.type",
@@ -363,7 +366,7 @@ public class BaseTypeChecker implements TypeChecker {
                 // TODO: handle vararg (both type check and location) correctly
                 SetMultimap<QualifierHierarchy, Constraint> constraints =
                         typeHierarchy.getSubtypeConstraints(argType, paramType);
-                AnalysisMessage unsatMessage = AnalysisMessage.createError(
+                int unsatMessage = messageTable.addError(
                         generalContext.getRoot(),
                         NodeUtils.getRealSourceTree(flowContext, argNode),
                         "argument.type.incompatible",
@@ -382,7 +385,7 @@ public class BaseTypeChecker implements TypeChecker {
 
             SetMultimap<QualifierHierarchy, Constraint> constraints =
                     typeHierarchy.getSubtypeConstraints(rhsType, lhsType);
-            AnalysisMessage unsatMessage = AnalysisMessage.createError(
+            int unsatMessage = messageTable.addError(
                     generalContext.getRoot(),
                     NodeUtils.getRealSourceTree(flowContext, n),
                     "assignment.type.incompatible",
@@ -412,7 +415,7 @@ public class BaseTypeChecker implements TypeChecker {
 
                 SetMultimap<QualifierHierarchy, Constraint> constraints =
                         typeHierarchy.getSubtypeConstraints(returnExprType, methodType.getReturnType());
-                AnalysisMessage unsatMessage = AnalysisMessage.createError(
+                int unsatMessage = messageTable.addError(
                         generalContext.getRoot(),
                         NodeUtils.getRealSourceTree(flowContext, n),
                         "return.type.incompatible",
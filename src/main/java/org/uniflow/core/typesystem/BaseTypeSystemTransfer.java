@@ -22,6 +22,7 @@ import org.checkerframework.dataflow.cfg.UnderlyingAST;
 import org.checkerframework.dataflow.cfg.node.AbstractNodeVisitor;
 import org.checkerframework.dataflow.cfg.node.ArrayAccessNode;
 import org.checkerframework.dataflow.cfg.node.AssignmentNode;
+import org.checkerframework.dataflow.cfg.node.BinaryOperationNode;
 import org.checkerframework.dataflow.cfg.node.CaseNode;
 import org.checkerframework.dataflow.cfg.node.ClassNameNode;
 import org.checkerframework.dataflow.cfg.node.ConditionalNotNode;
@@ -41,6 +42,8 @@ import org.checkerframework.dataflow.cfg.node.StringConversionNode;
 import org.checkerframework.dataflow.cfg.node.SwitchExpressionNode;
 import org.checkerframework.dataflow.cfg.node.TernaryExpressionNode;
 import org.checkerframework.dataflow.cfg.node.ThisNode;
+import org.checkerframework.dataflow.cfg.node.UnaryOperationNode;
+import org.checkerframework.dataflow.cfg.node.ValueLiteralNode;
 import org.checkerframework.dataflow.cfg.node.VariableDeclarationNode;
 import org.checkerframework.dataflow.cfg.node.WideningConversionNode;
 import org.checkerframework.dataflow.expression.ArrayAccess;
@@ -113,7 +116,7 @@ public class BaseTypeSystemTransfer
 
         for (LocalVariableNode localVar : parameters) {
             QualifiedVariableElement<ProductSlot> declaredType = declarationTypeResolver.getType(localVar.getElement());
-            FlowValue value = new FlowValue(context, declaredType.getType());
+            FlowValue value = FlowValue.of(context, declaredType.getType());
             initialStore.replaceValue(localVar, value);
         }
 
@@ -128,7 +131,7 @@ public class BaseTypeSystemTransfer
                                 FlowStore initialStore) {
         for (LocalVariableNode localVar : parameters) {
             QualifiedVariableElement<ProductSlot> paramType = declarationTypeResolver.getType(localVar.getElement());
-            FlowValue paramValue = new FlowValue(context, paramType.getType());
+            FlowValue paramValue = FlowValue.of(context, paramType.getType());
             initialStore.replaceValue(localVar, paramValue);
         }
         addFinalLocalValues(initialStore, TreeUtils.elementFromDeclaration(underlyingAST.getMethod()));
@@ -138,7 +141,7 @@ public class BaseTypeSystemTransfer
             // type of "this" in constructor can be determined by NodeTypeResolver
             QualifiedExecutableElement execType = declarationTypeResolver.getType(execElement);
             QualifiedType<ProductSlot> receiverType = execType.getReceiverType();
-            FlowValue receiverValue = new FlowValue(context, receiverType);
+            FlowValue receiverValue = FlowValue.of(context, receiverType);
             initialStore.replaceValue(new ThisReference(receiverType.getJavaType()), receiverValue);
         }
 
@@ -157,6 +160,23 @@ public class BaseTypeSystemTransfer
         }
     }
 
+    /**
+     * A subclass may change how any node is transferred, e.g. read the store for an addition, so this returns
+     * false in subclasses. A subclass can override this method for the nodes it knows to be independent.
+     */
+    @Override
+    public boolean isInputIndependent(Node n) {
+        if (getClass() != BaseTypeSystemTransfer.class) {
+            return false;
+        }
+        // literals and operations are transferred by visitNode(), except the ones that refine the stores
+        if (n instanceof EqualToNode || n instanceof NotEqualNode || n instanceof ConditionalNotNode) {
+            return false;
+        }
+        return (n instanceof ValueLiteralNode || n instanceof UnaryOperationNode || n instanceof BinaryOperationNode)
+                && nodeTypeResolver.isInputIndependent(n);
+    }
+
     @Override
     public TransferResult<FlowValue, FlowStore> visitNode(Node n, TransferInput<FlowValue, FlowStore> input) {
         return defaultTransferResult(n, input, ResultType.BY_INPUT);
@@ -488,7 +508,7 @@ public class BaseTypeSystemTransfer
                 );
                 continue;
             }
-            FlowValue refinedValue = new FlowValue(context,
+            FlowValue refinedValue = FlowValue.of(context,
                     nodeTypeResolver.refineType(targetExprValue.type, sourceValue.type));
 
             if (equalTo) {
@@ -537,7 +557,7 @@ public class BaseTypeSystemTransfer
 
     protected @Nullable FlowValue createFlowValue(Node n, TransferInput<FlowValue, FlowStore> input) {
         QualifiedType<ProductSlot> nodeType = nodeTypeResolver.getType(n, input);
-        return (nodeType == null) ? null : new FlowValue(context, nodeType);
+        return (nodeType == null) ? null : FlowValue.of(context, nodeType);
     }
 
     private enum ResultType {
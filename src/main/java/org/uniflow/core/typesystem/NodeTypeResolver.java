@@ -14,6 +14,13 @@ public interface NodeTypeResolver {
 
     QualifiedType<ProductSlot> getLhsNodeType(Node n);
 
+    /**
+     * @return true if {@link #getType} always returns the same type for {@code n}, whatever the transfer input
+     */
+    default boolean isInputIndependent(Node n) {
+        return false;
+    }
+
     /**
      * Try to refine the {@code originalType} by using the {@code maybePreciseType} as a reference. Note that the
      * java type of {@code maybePreciseType} can be different from the java type of {@code originalType}.
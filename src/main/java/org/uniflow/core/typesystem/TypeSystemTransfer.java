@@ -6,12 +6,28 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.dataflow.analysis.ForwardTransferFunction;
 import org.checkerframework.dataflow.cfg.UnderlyingAST;
 import org.checkerframework.dataflow.cfg.node.LocalVariableNode;
+import org.checkerframework.dataflow.cfg.node.Node;
 
 import java.util.List;
 
 public interface TypeSystemTransfer extends ForwardTransferFunction<FlowValue, FlowStore> {
+    /**
+     * @return the number of stores a loop header receives before the stores flowing into it are widened
+     * instead of merged by their least upper bound, or -1 to never widen. Other blocks are never widened.
+     * See {@link FlowStore#widenedUpperBound}.
+     */
     default int maxCountBeforeWidening() {
-        return -1;
+        return 3;
+    }
+
+    /**
+     * @return true if the result of this transfer function for {@code n} only depends on {@code n}: the result
+     * value is the same whenever {@code n} is analyzed, and the stores of the input are passed through
+     * unchanged. Then the result value may be reused instead of running this transfer function again. A
+     * subclass that changes how such a node is transferred should override this method as well.
+     */
+    default boolean isInputIndependent(Node n) {
+        return false;
     }
 
     FlowStore initialStore(UnderlyingAST underlyingAST,
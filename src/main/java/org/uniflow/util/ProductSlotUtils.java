@@ -65,6 +65,14 @@ public class ProductSlotUtils {
         return merger.visit(t1, t2);
     }
 
+    // Simple traverses two types of the same structure and widens each ProductSlot of the previous type
+    // by the one of the next type, see SlotQualifierHierarchy#widenedUpperBound
+    public static QualifiedType<ProductSlot> widen(Context context,
+                                                   QualifiedType<ProductSlot> next,
+                                                   QualifiedType<ProductSlot> previous) {
+        return ProductSlotWidener.instance(context).visit(next, previous);
+    }
+
     // Simple traverses two types of the same structure and applies changes on newType to
     // the oldType for the given hierarchies.
     public static QualifiedType<ProductSlot> replace(Context context,
@@ -326,6 +334,55 @@ public class ProductSlotUtils {
         }
     }
 
+    private static final class ProductSlotWidener
+            extends QualifiedTypeCombiner<ProductSlot, ProductSlot, ProductSlot> {
+
+        private final SlotManager slotManager;
+
+        private final SlotQualifierHierarchy slotQualifierHierarchy;
+
+        private ProductSlotWidener(Context context) {
+            slotManager = SlotManager.instance(context);
+            slotQualifierHierarchy = SlotQualifierHierarchy.instance(context);
+
+            context.put(ProductSlotWidener.class, this);
+        }
+
+        public static ProductSlotWidener instance(Context context) {
+            ProductSlotWidener instance = context.get(ProductSlotWidener.class);
+            if (instance == null) {
+                instance = new ProductSlotWidener(context);
+            }
+            return instance;
+        }
+
+        @Override
+        protected ProductSlot getQualifier(PrimaryQualifiedType<ProductSlot> next,
+                                           PrimaryQualifiedType<ProductSlot> previous) {
+            Map<QualifierHierarchy, ? extends Slot> nextSlots = next.getQualifier().getSlots();
+            Map<QualifierHierarchy, ? extends Slot> previousSlots = previous.getQualifier().getSlots();
+            Verify.verify(
+                    nextSlots.keySet().equals(previousSlots.keySet()),
+                    """
+                    Failed to widen two product slots,
+                    qualified type #1: %s,
+                    qualified type #2: %s
+                    """,
+                    next,
+                    previous
+            );
+
+            Map<QualifierHierarchy, Slot> widenedSlots = new LinkedHashMap<>();
+            for (Map.Entry<QualifierHierarchy, ? extends Slot> e : nextSlots.entrySet()) {
+                QualifierHierarchy hierarchy = e.getKey();
+                Slot nextSlot = e.getValue();
+                Slot previousSlot = previousSlots.get(hierarchy);
+                widenedSlots.put(hierarchy, slotQualifierHierarchy.widenedUpperBound(nextSlot, previousSlot));
+            }
+            return slotManager.createProductSlot(widenedSlots);
+        }
+    }
+
     private static final class ProductSlotTypeCombiner
             extends QualifiedTypeCombiner<ProductSlot, ProductSlot, ProductSlot> {
 
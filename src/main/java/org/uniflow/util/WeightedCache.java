@@ -0,0 +1,155 @@
+package org.uniflow.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.Maps;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToLongBiFunction;
+
+/**
+ * A least-recently-used cache that is bounded by the total weight of its entries instead of their number,
+ * where the weight of an entry estimates the memory it retains.
+ * <p>
+ * An entry is weighed again each time it is read, as callers may fill a cached value after inserting it. The
+ * least recently used entries are evicted until the total weight is within the maximum weight, except the
+ * most recently used entry. The entries can only be changed through the methods of the map, not its views.
+ */
+public final class WeightedCache<K, V> extends AbstractMap<K, V> {
+
+    private static final class Entry<V> {
+        final V value;
+        long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    private final long maxWeight;
+
+    private final ToLongBiFunction<? super K, ? super V> weigher;
+
+    private long totalWeight;
+
+    private long hitCount;
+
+    private long missCount;
+
+    private long evictionCount;
+
+    public WeightedCache(long maxWeight, ToLongBiFunction<? super K, ? super V> weigher) {
+        Preconditions.checkArgument(maxWeight > 0, "Maximum weight %s is not positive", maxWeight);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    @Override
+    public @Nullable V get(Object key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            ++missCount;
+            return null;
+        }
+        ++hitCount;
+
+        @SuppressWarnings("unchecked") // the key is in the map
+        long newWeight = weigh((K) key, entry.value);
+        totalWeight += newWeight - entry.weight;
+        entry.weight = newWeight;
+        evict();
+        return entry.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public @Nullable V put(K key, V value) {
+        Entry<V> newEntry = new Entry<>(value, weigh(key, value));
+        Entry<V> oldEntry = entries.put(key, newEntry);
+        totalWeight += newEntry.weight;
+        if (oldEntry != null) {
+            totalWeight -= oldEntry.weight;
+        }
+        evict();
+        return oldEntry != null ? oldEntry.value : null;
+    }
+
+    @Override
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        V value = get(key);
+        if (value == null) {
+            value = mappingFunction.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public @Nullable V remove(Object key) {
+        Entry<V> entry = entries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        totalWeight -= entry.weight;
+        return entry.value;
+    }
+
+    @Override
+    public void clear() {
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return Maps.transformValues(Collections.unmodifiableMap(entries), e -> e.value).entrySet();
+    }
+
+    public long getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * @return the statistics of this cache since it was created, which are kept when it is cleared. Only the
+     * hit, miss and eviction counts are recorded.
+     */
+    public CacheStats stats() {
+        return new CacheStats(hitCount, missCount, 0, 0, 0, evictionCount);
+    }
+
+    private long weigh(K key, V value) {
+        long weight = weigher.applyAsLong(key, value);
+        Preconditions.checkState(weight >= 0, "Weight %s of %s is negative", weight, key);
+        return weight;
+    }
+
+    private void evict() {
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (totalWeight > maxWeight && entries.size() > 1) {
+            Entry<V> eldest = iterator.next();
+            iterator.remove();
+            totalWeight -= eldest.weight;
+            ++evictionCount;
+        }
+    }
+}
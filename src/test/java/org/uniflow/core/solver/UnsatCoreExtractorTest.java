@@ -0,0 +1,49 @@
+package org.uniflow.core.solver;
+
+import com.sun.tools.javac.util.Context;
+import org.uniflow.core.model.constraint.Constraint;
+import org.uniflow.core.model.constraint.ConstraintManager;
+import org.uniflow.core.model.slot.ConstantSlot;
+import org.uniflow.core.model.slot.SlotManager;
+import org.uniflow.core.model.slot.SourceSlot;
+import org.uniflow.core.solver.serializer.CnfVecIntSerializer;
+import org.uniflow.core.typesystem.QualifierHierarchy;
+import org.junit.jupiter.api.Test;
+import org.tainting.TaintingQualifierHierarchy;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UnsatCoreExtractorTest {
+
+    @Test
+    void ignoresPreferences() {
+        Context context = new Context();
+        SlotManager slotManager = SlotManager.instance(context);
+        ConstraintManager constraintManager = ConstraintManager.instance(context);
+        QualifierHierarchy hierarchy = new TaintingQualifierHierarchy();
+
+        ConstantSlot top = slotManager.createConstantSlot(hierarchy, hierarchy.getTopQualifier());
+        ConstantSlot bottom = slotManager.createConstantSlot(hierarchy, hierarchy.getBottomQualifier());
+        SourceSlot slot = slotManager.createSourceSlot(hierarchy, null);
+
+        Constraint isTop = constraintManager.getForSubtype(top, slot);
+        Constraint isBottom = constraintManager.getForSubtype(slot, bottom);
+        Constraint prefersBottom = constraintManager.getForPreference(slot, bottom, 1);
+
+        CnfVecIntSerializer serializer = new CnfVecIntSerializer(context) {
+            @Override
+            protected boolean isTop(ConstantSlot constantSlot) {
+                return constantSlot.getValue().equals(hierarchy.getTopQualifier());
+            }
+        };
+        Set<Constraint> core = UnsatCoreExtractor.extract(List.of(prefersBottom, isTop, isBottom),
+                serializer,
+                null,
+                10_000);
+
+        assertEquals(Set.of(isTop, isBottom), core);
+    }
+}